@@ -1,13 +1,15 @@
 package com.piro.bezier;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import eu.mihosoft.vrl.v3d.Plane;
 import eu.mihosoft.vrl.v3d.Vector3d;
+import eu.mihosoft.vrl.v3d.VertexIndex;
 
 public class BezierPath {
 
@@ -16,6 +18,8 @@ public class BezierPath {
 	BezierListProducer path;
 
 	private ArrayList<Vector3d> plInternal = new ArrayList<Vector3d>();
+	/** Finds the point of plInternal closer than the epsilon to a new point. */
+	private VertexIndex pointIndex;
 	double resolution = 0.075;
 
 	/** Creates a new instance of Animate */
@@ -35,25 +39,12 @@ public class BezierPath {
 	}
 
 	protected void parsePathList(String list) {
-		// Oh come on... well i have no idea what this regx is going to parse for, good
-		// luck
-		final Matcher matchPathCmd = Pattern
-				.compile("([MmLlHhVvAaQqTtCcSsZz])|([-+]?((\\d*\\.\\d+)|(\\d+))([eE][-+]?\\d+)?)").matcher(list);
-
-		// Tokenize
-		LinkedList<String> tokens = new LinkedList<String>();
-		while (matchPathCmd.find()) {
-			tokens.addLast(matchPathCmd.group());
-		}
+		PathTokens tokens = new PathTokens(list);
 
 		char curCmd = 'Z';
-		while (tokens.size() != 0) {
-			String curToken = tokens.removeFirst();
-			char initChar = curToken.charAt(0);
-			if ((initChar >= 'A' && initChar <= 'Z') || (initChar >= 'a' && initChar <= 'z')) {
-				curCmd = initChar;
-			} else {
-				tokens.addFirst(curToken);
+		while (tokens.hasNext()) {
+			if (tokens.isCommand()) {
+				curCmd = tokens.nextCommand();
 			}
 			double  x, y;
 			switch (curCmd) {
@@ -174,16 +165,122 @@ public class BezierPath {
 	}
 
 	private boolean setThePoint(Vector3d eval) {
-		for(Vector3d v:plInternal) {
-			if(Math.abs(v.minus(eval).magnitude())<Plane.getEPSILON())
-				return false;
-		}
+		if (pointIndex == null)
+			pointIndex = new VertexIndex(Plane.getEPSILON(), 64);
+		if (pointIndex.indexOfCloserThan(eval, Plane.getEPSILON()) >= 0)
+			return false;
+		pointIndex.add(eval.x, eval.y, eval.z);
 		return plInternal.add(eval);
 	}
 
-	static protected double  nextFloat(LinkedList<String> l) {
-		String s = l.removeFirst();
-		return Float.parseFloat(s);
+	static protected double nextFloat(PathTokens tokens) {
+		return tokens.nextNumber();
+	}
+
+	/**
+	 * Splits path data into the commands and numbers the pattern
+	 * {@code ([MmLlHhVvAaQqTtCcSsZz])|([-+]?((\d*\.\d+)|(\d+))([eE][-+]?\d+)?)}
+	 * finds, without a regular expression. Everything else separates tokens.
+	 * Numbers are read with float precision.
+	 */
+	static final class PathTokens {
+		private static final String COMMANDS = "MmLlHhVvAaQqTtCcSsZz";
+
+		/** The command of every token, 0 for numbers. */
+		private char[] commands = new char[16];
+		private double[] numbers = new double[16];
+		private int size;
+		private int position;
+
+		PathTokens(String d) {
+			int length = d.length();
+			int i = 0;
+			while (i < length) {
+				char c = d.charAt(i);
+				if (COMMANDS.indexOf(c) >= 0) {
+					add(c, 0);
+					i++;
+					continue;
+				}
+				int end = scanNumber(d, i);
+				if (end > i) {
+					add((char) 0, Float.parseFloat(d.substring(i, end)));
+					i = end;
+				} else {
+					i++;
+				}
+			}
+		}
+
+		/**
+		 * Gets the end of the number starting at an index, or the index if no
+		 * number starts there.
+		 */
+		private static int scanNumber(String d, int start) {
+			int length = d.length();
+			int i = start;
+			if (i < length && (d.charAt(i) == '-' || d.charAt(i) == '+'))
+				i++;
+			int digits = skipDigits(d, i);
+			int end;
+			if (digits < length && d.charAt(digits) == '.' && digits + 1 < length
+					&& isDigit(d.charAt(digits + 1))) {
+				end = skipDigits(d, digits + 1);
+			} else if (digits > i) {
+				end = digits;
+			} else {
+				return start;
+			}
+			if (end < length && (d.charAt(end) == 'e' || d.charAt(end) == 'E')) {
+				int exponent = end + 1;
+				if (exponent < length && (d.charAt(exponent) == '-' || d.charAt(exponent) == '+'))
+					exponent++;
+				int exponentEnd = skipDigits(d, exponent);
+				if (exponentEnd > exponent)
+					end = exponentEnd;
+			}
+			return end;
+		}
+
+		private static int skipDigits(String d, int i) {
+			while (i < d.length() && isDigit(d.charAt(i)))
+				i++;
+			return i;
+		}
+
+		private static boolean isDigit(char c) {
+			return c >= '0' && c <= '9';
+		}
+
+		private void add(char command, double number) {
+			if (size == commands.length) {
+				commands = Arrays.copyOf(commands, size * 2);
+				numbers = Arrays.copyOf(numbers, size * 2);
+			}
+			commands[size] = command;
+			numbers[size] = number;
+			size++;
+		}
+
+		boolean hasNext() {
+			return position < size;
+		}
+
+		boolean isCommand() {
+			return commands[position] != 0;
+		}
+
+		char nextCommand() {
+			return commands[position++];
+		}
+
+		double nextNumber() {
+			if (position >= size)
+				throw new NoSuchElementException();
+			if (commands[position] != 0)
+				throw new NumberFormatException("For input string: \"" + commands[position++] + "\"");
+			return numbers[position++];
+		}
 	}
 
 	/**
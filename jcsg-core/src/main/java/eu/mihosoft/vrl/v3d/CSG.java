@@ -40,16 +40,29 @@ import eu.mihosoft.vrl.v3d.parametrics.IParametric;
 import eu.mihosoft.vrl.v3d.parametrics.IRegenerate;
 import eu.mihosoft.vrl.v3d.parametrics.LengthParameter;
 import eu.mihosoft.vrl.v3d.parametrics.Parameter;
+import javax.vecmath.Matrix4d;
 
 import java.awt.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -118,15 +131,30 @@ public class CSG implements IuserAPI {
 	private static IDebug3dProvider providerOf3d = null;
 	private static int numFacesInOffset = 15;
 
-	/** The polygons. */
+	/** The polygons, the untransformed source polygons while a transform is pending. */
 	private List<Polygon> polygons;
 
+	/**
+	 * The transform not yet applied to the polygons, null if they are current.
+	 * Written after the polygons, read it before them.
+	 */
+	private volatile Transform pendingTransform = null;
+
 	/** The default opt type. */
 	private static OptType defaultOptType = OptType.CSG_BOUND;
 
 	/** The opt type. */
 	private OptType optType = null;
 
+	/** The splitting plane selection used when building BSP trees. */
+	private static SplitPlaneType defaultSplitPlaneType = SplitPlaneType.FIRST_POLYGON;
+
+	/** Whether BSP operations run on the fork/join pool by default. */
+	private static boolean defaultParallelBSP = false;
+
+	/** Whether BSP operations of this csg run on the fork/join pool. */
+	private Boolean parallelBSP = null;
+
 	/** The storage. */
 	private PropertyStorage str;
 	private PropertyStorage assembly;
@@ -139,7 +167,10 @@ public class CSG implements IuserAPI {
 	private Color color = getDefaultColor();
 
 	private Bounds bounds;
+	private PolygonIndex polygonIndex;
 	private ArrayList<String> groovyFileLines = new ArrayList<>();
+	/** Index of groovyFileLines once it is too long to search. */
+	private HashSet<String> groovyFileLineSet = null;
 	private PrepForManufacturing manufactuing = null;
 	private HashMap<String, IParametric> mapOfparametrics = null;
 	private String name = "";
@@ -148,7 +179,7 @@ public class CSG implements IuserAPI {
 	private ArrayList<Transform> datumReferences = null;
 	private boolean triangulated;
 	private static boolean needsDegeneratesPruned=false;
-	private static boolean useStackTraces = true;
+	private static volatile ProvenanceLevel provenanceLevel = ProvenanceLevel.FULL;
 	private static boolean preventNonManifoldTriangles = false;
 	private static boolean useGPU = false;
 
@@ -165,10 +196,8 @@ public class CSG implements IuserAPI {
 	public CSG() {
 		setStorage(new PropertyStorage());
 
-		if (useStackTraces) {
-			// This is the trace for where this csg was created
-			addStackTrace(new Exception());
-		}
+		// This is the trace for where this csg was created
+		Provenance.capture(provenanceLevel, this);
 	}
 
 	public CSG addDatumReference(Transform t) {
@@ -208,7 +237,7 @@ public class CSG implements IuserAPI {
 	 */
 	public CSG setColor(Color color) {
 		this.color = color;
-		for (Polygon p : polygons)
+		for (Polygon p : getPolygons())
 			p.setColor(color);
 		return this;
 	}
@@ -629,6 +658,16 @@ public class CSG implements IuserAPI {
 	public CSG clone() {
 		CSG csg = new CSG();
 		csg.setOptType(this.getOptType());
+		csg.parallelBSP = parallelBSP;
+		synchronized (this) {
+			if (pendingTransform != null) {
+				// the source polygons are never modified, the clone shares them
+				csg.polygons = polygons;
+				csg.pendingTransform = pendingTransform;
+				csg.bounds = bounds;
+				return csg.historySync(this);
+			}
+		}
 		csg.setPolygons(polygons.stream()
 				.filter(Objects::nonNull)
 				.map(Polygon::clone)
@@ -637,14 +676,115 @@ public class CSG implements IuserAPI {
 	}
 
 	/**
-	 * Gets the polygons.
+	 * Gets the polygons. A pending transform, see {@link #transformed(Transform)},
+	 * is applied first.
 	 *
 	 * @return the polygons of this CSG
 	 */
 	public List<Polygon> getPolygons() {
+		applyPendingTransform();
+		return polygons;
+	}
+
+	/**
+	 * Gets the transform not yet applied to the polygons. Read it together with
+	 * {@link #getSourcePolygons()} while holding the lock of this csg.
+	 *
+	 * @return the pending transform, null if the polygons are current
+	 */
+	Transform getPendingTransform() {
+		return pendingTransform;
+	}
+
+	/**
+	 * Gets the polygons the pending transform applies to, the polygons of this
+	 * csg if there is none. The polygons must not be modified.
+	 *
+	 * @return the source polygons
+	 */
+	List<Polygon> getSourcePolygons() {
 		return polygons;
 	}
 
+	/**
+	 * Applies the pending transform in one pass over the coordinates of all
+	 * source polygons.
+	 */
+	private void applyPendingTransform() {
+		if (pendingTransform == null) {
+			return;
+		}
+		synchronized (this) {
+			Transform transform = pendingTransform;
+			if (transform != null) {
+				polygons = transformPolygons(polygons, transform);
+				polygonIndex = null;
+				pendingTransform = null;
+			}
+		}
+	}
+
+	private static List<Polygon> transformPolygons(List<Polygon> source, Transform transform) {
+		Matrix4d m = transform.getInternalMatrix();
+		// cofactors of the linear part, the normals transform with the inverse
+		// transpose which is the cofactor matrix divided by the determinant
+		double c00 = m.m11 * m.m22 - m.m12 * m.m21;
+		double c01 = m.m12 * m.m20 - m.m10 * m.m22;
+		double c02 = m.m10 * m.m21 - m.m11 * m.m20;
+		double c10 = m.m02 * m.m21 - m.m01 * m.m22;
+		double c11 = m.m00 * m.m22 - m.m02 * m.m20;
+		double c12 = m.m01 * m.m20 - m.m00 * m.m21;
+		double c20 = m.m01 * m.m12 - m.m02 * m.m11;
+		double c21 = m.m02 * m.m10 - m.m00 * m.m12;
+		double c22 = m.m00 * m.m11 - m.m01 * m.m10;
+		double det = m.m00 * c00 + m.m01 * c01 + m.m02 * c02;
+		List<Polygon> result = new ArrayList<>(source.size());
+		if (det == 0 || !Double.isFinite(det)) {
+			// a flattening transform, fit the planes to the vertices
+			for (Polygon p : source) {
+				result.add(p.transformed(transform));
+			}
+		} else {
+			int count = 0;
+			for (Polygon p : source) {
+				count += p.vertices.size();
+			}
+			double[] coords = new double[count * 3];
+			double[] amounts = new double[count];
+			Arrays.fill(amounts, 1.0);
+			int k = 0;
+			for (Polygon p : source) {
+				for (Vertex v : p.vertices) {
+					coords[k++] = v.pos.x;
+					coords[k++] = v.pos.y;
+					coords[k++] = v.pos.z;
+				}
+			}
+			transform.transform(coords, amounts, count);
+			double sign = det < 0 ? -1 : 1;
+			k = 0;
+			for (Polygon p : source) {
+				int n = p.vertices.size();
+				ArrayList<Vertex> vertices = new ArrayList<>(n);
+				for (int i = 0; i < n; i++, k += 3) {
+					vertices.add(new Vertex(new Vector3d(coords[k], coords[k + 1], coords[k + 2]), null));
+				}
+				if (det < 0) {
+					// the transformation includes mirroring, keep the polygon facing out
+					Collections.reverse(vertices);
+				}
+				Vector3d normal = p.plane.getNormal();
+				Plane plane = new Plane(new Vector3d(
+						sign * (c00 * normal.x + c01 * normal.y + c02 * normal.z),
+						sign * (c10 * normal.x + c11 * normal.y + c12 * normal.z),
+						sign * (c20 * normal.x + c21 * normal.y + c22 * normal.z)), 0);
+				plane.setDist(plane.getNormal().dot(vertices.get(0).pos));
+				result.add(new Polygon(vertices, p.getStorage(), plane).setColor(p.getColor()));
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Defines the CSg optimization type.
 	 *
@@ -772,19 +912,174 @@ public class CSG implements IuserAPI {
 //		////com.neuronrobotics.sdk.common.Log.error("CSG.fromPolygons(a.allPolygons()).optimization(getOptType())");
 //		return CSG.fromPolygons(a.allPolygons()).optimization(getOptType());
 
-		CSG result = this;
+		if (csgs.isEmpty()) {
+			return this;
+		}
+		List<CSG> all = new ArrayList<>(csgs.size() + 1);
+		all.add(this);
+		all.addAll(csgs);
+		return unionReduce(all, "Union");
+	}
+
+	/**
+	 * Unions all of the specified csgs. The csgs are first grouped by bounding box
+	 * overlap; groups that can not touch each other are simply concatenated. The
+	 * members of each group are merged pairwise in a balanced tree on the
+	 * fork/join pool, so intermediate results are re-partitioned O(log n) times
+	 * instead of once per input.
+	 *
+	 * @param csgs the csgs to union, must not be empty
+	 * @param type the operation name reported to the progress monitor
+	 * @return the union of the specified csgs
+	 */
+	private static CSG unionReduce(List<CSG> csgs, String type) {
+		if (csgs.size() == 1) {
+			return csgs.get(0);
+		}
+		List<List<CSG>> groups = groupByBounds(csgs);
+		UnionProgress progress = new UnionProgress(csgs.size() - 1, type, Thread.currentThread());
 
-		for (int i = 0; i < csgs.size(); i++) {
-			CSG csg = csgs.get(i);
-			result = result.union(csg);
-			if (Thread.interrupted())
-				break;
-			progressMoniter.progressUpdate(i, csgs.size(), "Union", result);
+		List<ForkJoinTask<CSG>> tasks = new ArrayList<>(groups.size());
+		for (List<CSG> group : groups) {
+			tasks.add(ForkJoinPool.commonPool().submit(new UnionTask(group, 0, group.size(), progress)));
 		}
 
+		CSG result;
+		if (tasks.size() == 1) {
+			result = tasks.get(0).join();
+		} else {
+			List<Polygon> allPolygons = new ArrayList<>();
+			for (ForkJoinTask<CSG> task : tasks) {
+				allPolygons.addAll(task.join().getPolygons());
+			}
+			result = CSG.fromPolygons(allPolygons).optimization(csgs.get(0).getOptType());
+		}
+		// same name, color and parameters as folding the list left to right
+		for (CSG csg : csgs) {
+			result.historySync(csg);
+		}
 		return result;
 	}
 
+	/**
+	 * Splits the specified csgs into groups whose bounding boxes overlap,
+	 * directly or through other members of the group. Members of different groups
+	 * can not intersect. Groups and their members keep the input order.
+	 *
+	 * @param csgs the csgs to group
+	 * @return the groups
+	 */
+	private static List<List<CSG>> groupByBounds(List<CSG> csgs) {
+		int n = csgs.size();
+		Bounds[] bounds = new Bounds[n];
+		Integer[] order = new Integer[n];
+		int[] parent = new int[n];
+		for (int i = 0; i < n; i++) {
+			bounds[i] = csgs.get(i).getBounds();
+			order[i] = i;
+			parent[i] = i;
+		}
+
+		// sweep along x, only boxes whose x ranges overlap need a full test
+		Arrays.sort(order, (i, j) -> Double.compare(bounds[i].getMin().x, bounds[j].getMin().x));
+		for (int i = 0; i < n; i++) {
+			Bounds b = bounds[order[i]];
+			for (int j = i + 1; j < n && bounds[order[j]].getMin().x <= b.getMax().x; j++) {
+				if (b.intersects(bounds[order[j]])) {
+					int rootA = findGroup(parent, order[i]);
+					int rootB = findGroup(parent, order[j]);
+					if (rootA != rootB) {
+						parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+					}
+				}
+			}
+		}
+
+		HashMap<Integer, List<CSG>> byRoot = new HashMap<>();
+		List<List<CSG>> groups = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			List<CSG> group = byRoot.get(findGroup(parent, i));
+			if (group == null) {
+				group = new ArrayList<>();
+				byRoot.put(findGroup(parent, i), group);
+				groups.add(group);
+			}
+			group.add(csgs.get(i));
+		}
+		return groups;
+	}
+
+	private static int findGroup(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Progress shared by the tasks of one {@link #unionReduce(List, String)}.
+	 */
+	private static final class UnionProgress {
+		private final AtomicInteger done = new AtomicInteger();
+		private final int total;
+		private final String type;
+		private final Thread caller;
+
+		UnionProgress(int total, String type, Thread caller) {
+			this.total = total;
+			this.type = type;
+			this.caller = caller;
+		}
+
+		void merged(CSG intermediate) {
+			synchronized (this) {
+				progressMoniter.progressUpdate(done.incrementAndGet(), total, type, intermediate);
+			}
+		}
+
+		boolean isCancelled() {
+			return caller.isInterrupted();
+		}
+	}
+
+	/**
+	 * Unions a range of csgs by splitting it in halves and merging the results.
+	 */
+	private static final class UnionTask extends RecursiveTask<CSG> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<CSG> csgs;
+		private final int from;
+		private final int to;
+		private final UnionProgress progress;
+
+		UnionTask(List<CSG> csgs, int from, int to, UnionProgress progress) {
+			this.csgs = csgs;
+			this.from = from;
+			this.to = to;
+			this.progress = progress;
+		}
+
+		@Override
+		protected CSG compute() {
+			if (to - from == 1) {
+				return csgs.get(from);
+			}
+			int mid = (from + to) >>> 1;
+			UnionTask left = new UnionTask(csgs, from, mid, progress);
+			left.fork();
+			CSG right = new UnionTask(csgs, mid, to, progress).compute();
+			CSG merged = left.join();
+			if (progress.isCancelled()) {
+				return merged;
+			}
+			merged = merged.union(right);
+			progress.merged(merged);
+			return merged;
+		}
+	}
+
 	/**
 	 * Return a new CSG solid representing the union of this csg and the specified
 	 * csgs.
@@ -908,15 +1203,7 @@ public class CSG implements IuserAPI {
 		List<Polygon> inner = new ArrayList<>();
 		List<Polygon> outer = new ArrayList<>();
 
-		Bounds b = csg.getBounds();
-
-		this.getPolygons().stream().forEach((p) -> {
-			if (b.intersects(p.getBounds())) {
-				inner.add(p);
-			} else {
-				outer.add(p);
-			}
-		});
+		getPolygonIndex().partition(csg.getBounds(), inner, outer);
 
 		List<Polygon> allPolygons = new ArrayList<>();
 
@@ -946,16 +1233,7 @@ public class CSG implements IuserAPI {
 	 * @return the union of this csg and the specified csg
 	 */
 	private CSG _unionIntersectOpt(CSG csg) {
-		boolean intersects = false;
-
-		Bounds bounds = csg.getBounds();
-
-		for (Polygon p : getPolygons()) {
-			if (bounds.intersects(p.getBounds())) {
-				intersects = true;
-				break;
-			}
-		}
+		boolean intersects = getPolygonIndex().intersectsAny(csg.getBounds());
 
 		List<Polygon> allPolygons = new ArrayList<>();
 
@@ -979,12 +1257,14 @@ public class CSG implements IuserAPI {
 	 * @return the csg
 	 */
 	private CSG _unionNoOpt(CSG csg) {
-		Node a = new Node(this.clone().getPolygons());
-		Node b = new Node(csg.clone().getPolygons());
-		a.clipTo(b);
-		b.clipTo(a);
+		boolean parallel = isParallelBSP();
+		Node[] nodes = buildNodes(csg, parallel);
+		Node a = nodes[0];
+		Node b = nodes[1];
+		a.clipTo(b, parallel);
+		b.clipTo(a, parallel);
 		b.invert();
-		b.clipTo(a);
+		b.clipTo(a, parallel);
 		b.invert();
 		a.build(b.allPolygons());
 		CSG back = CSG.fromPolygons(a.allPolygons()).optimization(getOptType());
@@ -994,6 +1274,23 @@ public class CSG implements IuserAPI {
 		return back;
 	}
 
+	/**
+	 * Builds the BSP trees for this csg and the specified csg from copies of their
+	 * polygons. In parallel BSP mode the two trees are built concurrently.
+	 *
+	 * @param csg      the other csg
+	 * @param parallel whether to use the fork/join pool
+	 * @return the tree of this csg followed by the tree of the specified csg
+	 */
+	private Node[] buildNodes(CSG csg, boolean parallel) {
+		if (!parallel) {
+			return new Node[] { new Node(this.clone().getPolygons()), new Node(csg.clone().getPolygons()) };
+		}
+		ForkJoinTask<Node> other = ForkJoinPool.commonPool().submit(() -> new Node(csg.clone().getPolygons()));
+		Node a = new Node(this.clone().getPolygons());
+		return new Node[] { a, other.join() };
+	}
+
 	/**
 	 * Return a new CSG solid representing the difference of this csg and the
 	 * specified csgs.
@@ -1026,17 +1323,22 @@ public class CSG implements IuserAPI {
 			return this.clone();
 		}
 
-		CSG csgsUnion = csgs.get(0);
-
-		for (int i = 1; i < csgs.size(); i++) {
-			csgsUnion = csgsUnion.union(csgs.get(i));
-			progressMoniter.progressUpdate(i, csgs.size(), "Difference", csgsUnion);
-			csgsUnion.historySync(csgs.get(i));
-			if (Thread.interrupted())
-				break;
+		// cutters that do not reach this csg can not remove anything
+		Bounds b = getBounds();
+		List<CSG> cutters = new ArrayList<>(csgs.size());
+		for (CSG csg : csgs) {
+			if (b.intersects(csg.getBounds())) {
+				cutters.add(csg);
+			}
 		}
 
-		return difference(csgsUnion);
+		CSG result = cutters.isEmpty() ? this.clone() : difference(unionReduce(cutters, "Difference"));
+		if (result != this) {
+			for (CSG csg : csgs) {
+				result.historySync(csg);
+			}
+		}
+		return result;
 	}
 
 	/**
@@ -1144,6 +1446,14 @@ public class CSG implements IuserAPI {
 	 * @return the csg
 	 */
 	private CSG _differenceCSGBoundsOpt(CSG csg) {
+		if (!mayTouch(csg)) {
+			CSG result = this.clone().optimization(getOptType());
+			if (getName().length() != 0 && csg.getName().length() != 0) {
+				result.setName(name);
+			}
+			result.color = color;
+			return result;
+		}
 		CSG a1 = this._differenceNoOpt(csg.getBounds().toCSG());
 		CSG a2 = this.intersect(csg.getBounds().toCSG());
 		CSG result = a2._differenceNoOpt(csg)._unionIntersectOpt(a1).optimization(getOptType());
@@ -1164,15 +1474,7 @@ public class CSG implements IuserAPI {
 		List<Polygon> inner = new ArrayList<>();
 		List<Polygon> outer = new ArrayList<>();
 
-		Bounds bounds = csg.getBounds();
-
-		this.getPolygons().stream().forEach((p) -> {
-			if (bounds.intersects(p.getBounds())) {
-				inner.add(p);
-			} else {
-				outer.add(p);
-			}
-		});
+		getPolygonIndex().partition(csg.getBounds(), inner, outer);
 
 		CSG innerCSG = CSG.fromPolygons(inner);
 
@@ -1194,14 +1496,16 @@ public class CSG implements IuserAPI {
 	 */
 	private CSG _differenceNoOpt(CSG csg) {
 
-		Node a = new Node(this.clone().getPolygons());
-		Node b = new Node(csg.clone().getPolygons());
+		boolean parallel = isParallelBSP();
+		Node[] nodes = buildNodes(csg, parallel);
+		Node a = nodes[0];
+		Node b = nodes[1];
 
 		a.invert();
-		a.clipTo(b);
-		b.clipTo(a);
+		a.clipTo(b, parallel);
+		b.clipTo(a, parallel);
 		b.invert();
-		b.clipTo(a);
+		b.clipTo(a, parallel);
 		b.invert();
 		a.build(b.allPolygons());
 		a.invert();
@@ -1243,13 +1547,23 @@ public class CSG implements IuserAPI {
 	public CSG intersect(CSG csg) {
 //		triangulate();
 //		csg.triangulate();
-		Node a = new Node(this.clone().getPolygons());
-		Node b = new Node(csg.clone().getPolygons());
+		if (!mayTouch(csg)) {
+			CSG back = CSG.fromPolygons(new ArrayList<>()).optimization(getOptType()).historySync(csg)
+					.historySync(this);
+			if (getName().length() != 0 && csg.getName().length() != 0) {
+				back.setName(name);
+			}
+			return back;
+		}
+		boolean parallel = isParallelBSP();
+		Node[] nodes = buildNodes(csg, parallel);
+		Node a = nodes[0];
+		Node b = nodes[1];
 		a.invert();
-		b.clipTo(a);
+		b.clipTo(a, parallel);
 		b.invert();
-		a.clipTo(b);
-		b.clipTo(a);
+		a.clipTo(b, parallel);
+		b.clipTo(a, parallel);
 		a.build(b.allPolygons());
 		a.invert();
 		CSG back = CSG.fromPolygons(a.allPolygons()).optimization(getOptType()).historySync(csg).historySync(this);
@@ -1292,17 +1606,7 @@ public class CSG implements IuserAPI {
 			return this.clone();
 		}
 
-		CSG csgsUnion = csgs.get(0);
-
-		for (int i = 1; i < csgs.size(); i++) {
-			csgsUnion = csgsUnion.union(csgs.get(i));
-			progressMoniter.progressUpdate(i, csgs.size(), "Intersect", csgsUnion);
-			csgsUnion.historySync(csgs.get(i));
-			if (Thread.interrupted())
-				break;
-		}
-
-		return intersect(csgsUnion);
+		return intersect(unionReduce(csgs, "Intersect"));
 	}
 
 	/**
@@ -1360,10 +1664,9 @@ public class CSG implements IuserAPI {
 		try {
 			sb.append("solid v3d.csg\n");
 			for (Polygon p : getPolygons()) {
-				try {
-					Plane.computeNormal(p.vertices);
+				if (STLWriter.isExportable(p)) {
 					p.toStlString(sb);
-				} catch (Exception ex) {
+				} else {
 					System.out.println("Prune Polygon on export");
 				}
 			}
@@ -1375,6 +1678,27 @@ public class CSG implements IuserAPI {
 		}
 	}
 
+	/**
+	 * Writes this csg as ASCII STL to the specified stream without building the
+	 * whole file in memory.
+	 *
+	 * @param out the output stream, not closed by this method
+	 * @throws IOException if writing failed
+	 */
+	public void toStl(OutputStream out) throws IOException {
+		STLWriter.writeAscii(this, out);
+	}
+
+	/**
+	 * Writes this csg as binary STL to the specified stream.
+	 *
+	 * @param out the output stream, not closed by this method
+	 * @throws IOException if writing failed
+	 */
+	public void toBinaryStl(OutputStream out) throws IOException {
+		STLWriter.writeBinary(this, out);
+	}
+
 	public CSG triangulate() {
 		return triangulate(false);
 	}
@@ -1394,25 +1718,23 @@ public class CSG implements IuserAPI {
 		IDebug3dProvider start = Debug3dProvider.provider;
 		Debug3dProvider.setProvider(null);
 		if (preventNonManifoldTriangles) {
-			for (int i = 0; i < 2; i++)
-				if (isUseGPU()) {
+			if (isUseGPU()) {
+				for (int i = 0; i < 2; i++)
 					runGPUMakeManifold();
-				} else {
-					runCPUMakeManifold();
-				}
+			} else {
+				// the indexed pass inserts all points of an edge at once
+				runCPUMakeManifold();
+			}
 		}
 		try {
 			Stream<Polygon> polygonStream;
-			polygonStream = polygons.stream();
-			// TODO this should work in paralell but throws immpossible NPE's instead.
-//			if (getPolygons().size() > 200) {
-//				polygonStream = polygons.parallelStream();
-//			}
-			polygonStream.forEach(p -> updatePolygons(toAdd, degenerates, p));
-//			for (int i = 0; i < polygons.size(); i++) {
-//				Polygon p = polygons.get(i);
-//				updatePolygons(toAdd, degenerates, p);
-//			}
+			polygonStream = getPolygons().stream();
+			// every polygon is triangulated on its own, the results are joined in
+			// order
+			if (getPolygons().size() > 200) {
+				polygonStream = getPolygons().parallelStream();
+			}
+			polygonStream.map(this::triangulatePolygon).forEachOrdered(toAdd::addAll);
 
 			if (degenerates.size() > 0) {
 				//
@@ -1421,7 +1743,7 @@ public class CSG implements IuserAPI {
 				if (fix) {
 					Debug3dProvider.clearScreen();
 					Stream<Polygon> degenStreeam;
-					degenStreeam = polygons.stream(); // this operation is read-modify-write and can not be done in
+					degenStreeam = getPolygons().stream(); // this operation is read-modify-write and can not be done in
 														// parallel
 					// com.neuronrobotics.sdk.common.Log.error("Found "+degenerates.size()+"
 					// degenerate triangles, Attempting to fix");
@@ -1447,89 +1769,18 @@ public class CSG implements IuserAPI {
 	private void runCPUMakeManifold() {
 		long start = System.currentTimeMillis();
 		System.err.println("Cleaning up the mesh by adding coincident points to the polygons they touch");
-
-		int totalAdded = 0;
-		double tOL = 1.0e-11;
-
-		ArrayList<Thread> threads = new ArrayList<Thread>();
-		for (int j = 0; j < polygons.size(); j++) {
-			int threadIndex = j;
-			Thread t = new Thread(() -> {
-				Edge e = null;
-				// Test every polygon
-				Polygon i = polygons.get(threadIndex);
-				ArrayList<Vertex> vertices = i.vertices;
-				for (int k = 0; k < vertices.size(); k++) {
-					// each point in the checking polygon
-					int now = k;
-					int next = k + 1;
-					if (next == vertices.size())
-						next = 0;
-					// take the 2 points of this section of polygon to make an edge
-					Vertex p1 = vertices.get(now);
-					Vertex p2 = vertices.get(next);
-					if (e == null)
-						e = new Edge(p1, p2);
-					else {
-						e.setP1(p1);
-						e.setP2(p2);
-					}
-					for (int l = 0; l < polygons.size(); l++) {
-						Polygon ii = polygons.get(l);
-						if (threadIndex != l) {
-							// every other polygon besides this one being tested
-							ArrayList<Vertex> vert = ii.vertices;
-							for (int iii = 0; iii < vert.size(); iii++) {
-								Vertex vi = vert.get(iii);
-								// if they are coincident, move along
-								if (e.isThisPointOneOfMine(vi, tOL))
-									continue;
-								// if the point is on the line then we have a non manifold point
-								// it needs to be inserted into the polygon between the 2 points defined in the
-								// edge
-								if (e.contains(vi.pos, tOL)) {
-									// System.out.println("Inserting point "+vi);
-									vertices.add(next, vi);
-									e.setP2(vi);
-									// totalAdded++;
-								}
-							}
-						}
-					}
-				}
-			});
-			if (threads.size() > 32) {
-				for (Thread tr : threads)
-					try {
-						tr.join();
-					} catch (InterruptedException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-				totalAdded += 32;
-				threads.clear();
-				if (threadIndex/32 % 50 == 0 || j == polygons.size() - 1) {
-					progressMoniter.progressUpdate(j, polygons.size(),
-							"STL Processing Polygons for Manifold Vertex, #" + totalAdded + " added so far", this);
-				}
-			}
-
-			threads.add(t);
-			t.start();
-		}
-		for (Thread t : threads)
-			try {
-				t.join();
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		progressMoniter.progressUpdate(polygons.size(),polygons.size(),"Manifold fix took " + (System.currentTimeMillis() - start),this);
+		List<Polygon> polygons = getPolygons();
+		int size = polygons.size();
+		new ManifoldRepair(polygons, 1.0e-11).run((done, added) -> progressMoniter.progressUpdate(done, size,
+				"STL Processing Polygons for Manifold Vertex, #" + added + " added so far", this));
+		progressMoniter.progressUpdate(size, size, "Manifold fix took " + (System.currentTimeMillis() - start),
+				this);
 	}
 
 	private void runGPUMakeManifold() {
 		int numberOfPoints = 0;
 		int roomForMore = 10;
+		List<Polygon> polygons = getPolygons();
 		int size = polygons.size();
 		for (int i = 0; i < size; i++) {
 			numberOfPoints += (polygons.get(i).vertices.size());
@@ -1546,8 +1797,8 @@ public class CSG implements IuserAPI {
 			sizes[polyIndex] = polygons.get(polyIndex).vertices.size();
 			startIndex[polyIndex] = runningPointIndex;
 			for (int ii = 0; ii < sizes[polyIndex]; ii++) {
-				Vector3d pos = polygons.get(polyIndex).vertices.get(ii).pos.clone()
-						.roundToEpsilon(Vector3d.getEXPORTEPSILON());
+				Vector3d pos = polygons.get(polyIndex).vertices.get(ii).pos
+						.roundedToEpsilon(Vector3d.getEXPORTEPSILON());
 				pointData[startIndex[polyIndex] + 0 + ii] = (float) pos.x;
 				pointData[startIndex[polyIndex] + 1 + ii] = (float) pos.y;
 				pointData[startIndex[polyIndex] + 2 + ii] = (float) pos.z;
@@ -1649,47 +1900,15 @@ public class CSG implements IuserAPI {
 		return this;
 	}
 
-	private CSG updatePolygons(ArrayList<Polygon> toAdd, ArrayList<Polygon> degenerates, Polygon p) {
-		// p=PolygonUtil.pruneDuplicatePoints(p);
+	private List<Polygon> triangulatePolygon(Polygon p) {
 		if (p == null)
-			return this;
-//		if(p.isDegenerate()) {
-//			degenerates.add(p);
-//			return;
-//		}
-
-		if (p.vertices.size() == 3) {
-			toAdd.add(p);
-		} else {
-			// //com.neuronrobotics.sdk.common.Log.error("Fixing error in STL " + name + "
-			// polygon# " + i + "
-			// number of vertices " + p.vertices.size());
-			try {
-				List<Polygon> triangles = PolygonUtil.concaveToConvex(p);
-				for (Polygon poly : triangles) {
-					toAdd.add(poly);
-				}
-			} catch (Throwable ex) {
-				//ex.printStackTrace();
-				progressMoniter.progressUpdate(1, 1, "Pruning bad polygon CSG::updatePolygons " + p, null);
-//				try {PolygonUtil.concaveToConvex(p);} catch (Throwable ex2) {
-//					ex2.printStackTrace();
-//				}
-//				Debug3dProvider.setProvider(providerOf3d);
-//				//ex.printStackTrace();
-//				Debug3dProvider.clearScreen();
-//				Debug3dProvider.addObject(p);
-//				try {
-//					List<Polygon> triangles = PolygonUtil.concaveToConvex(p);
-//					toAdd.addAll(triangles);
-//				}catch(java.lang.IllegalStateException ise) {
-//					ise.printStackTrace();
-//				}
-//				Debug3dProvider.setProvider(null);
-			}
-
+			return Collections.emptyList();
+		try {
+			return PolygonUtil.triangulate(p);
+		} catch (Throwable ex) {
+			progressMoniter.progressUpdate(1, 1, "Pruning bad polygon CSG::triangulatePolygon " + p, null);
+			return Collections.emptyList();
 		}
-		return this;
 	}
 
 	/**
@@ -1711,85 +1930,106 @@ public class CSG implements IuserAPI {
 	 * @return the specified string builder
 	 */
 	public StringBuilder toObjString(StringBuilder sb) {
-		triangulate(true);
-		sb.append("# Group").append("\n");
-		sb.append("g v3d.csg\n");
-		sb.append("o " + (name == null || name.length() == 0 ? "CSG Export" : getName()) + "\n");
-		class PolygonStruct {
-
-			PropertyStorage storage;
-			List<Integer> indices;
-			String materialName;
-
-			public PolygonStruct(PropertyStorage storage, List<Integer> indices, String materialName) {
-				this.storage = storage;
-				this.indices = indices;
-				this.materialName = materialName;
-			}
+		try {
+			writeObj(sb);
+		} catch (IOException e) {
+			// a StringBuilder does not throw
+			throw new UncheckedIOException(e);
 		}
+		return sb;
+	}
 
-		List<Vertex> vertices = new ArrayList<>();
-		List<PolygonStruct> indices = new ArrayList<>();
-
-		sb.append("\n# Vertices\n");
-
-		for (Polygon p : getPolygons()) {
-			List<Integer> polyIndices = new ArrayList<>();
+	/**
+	 * Writes this csg in OBJ format to the specified stream without building the
+	 * whole file in memory.
+	 *
+	 * @param out the output stream, not closed by this method
+	 * @throws IOException if writing failed
+	 */
+	public void toObj(OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+		writeObj(writer);
+		writer.flush();
+	}
 
-			p.vertices.stream().forEach((v) -> {
-				if (!vertices.contains(v)) {
-					vertices.add(v);
-					v.toObjString(sb);
-					polyIndices.add(vertices.size());
-				} else {
-					polyIndices.add(vertices.indexOf(v) + 1);
+	/**
+	 * Writes this csg in OBJ format. Vertices are welded with
+	 * {@link Plane#EPSILON_Point} through a {@link VertexIndex}.
+	 *
+	 * @param out the output
+	 * @throws IOException if writing failed
+	 */
+	private void writeObj(Appendable out) throws IOException {
+		triangulate(true);
+		out.append("# Group").append("\n");
+		out.append("g v3d.csg\n");
+		out.append("o " + (name == null || name.length() == 0 ? "CSG Export" : getName()) + "\n");
+
+		List<Polygon> polygons = getPolygons();
+		VertexIndex vertices = new VertexIndex(polygons.size() * 3);
+		int[][] indices = new int[polygons.size()][];
+		StringBuilder line = new StringBuilder();
+
+		out.append("\n# Vertices\n");
+
+		for (int i = 0; i < polygons.size(); i++) {
+			List<Vertex> polygonVertices = polygons.get(i).vertices;
+			int[] polyIndices = new int[polygonVertices.size()];
+			for (int k = 0; k < polyIndices.length; k++) {
+				Vertex v = polygonVertices.get(k);
+				int size = vertices.size();
+				int index = vertices.weld(v.pos);
+				if (index == size) {
+					line.setLength(0);
+					out.append(v.toObjString(line));
 				}
-			});
-			indices.add(new PolygonStruct(getStorage(), polyIndices, " "));
-
+				polyIndices[k] = index + 1;
+			}
+			indices[i] = polyIndices;
 		}
 		HashMap<Vertex, Integer> mapping = new HashMap<Vertex, Integer>();
 		HashMap<Transform, Vertex> mappingTF = new HashMap<>();
 		if (datumReferences != null) {
 			int startingIndex = vertices.size() + 1;
-			sb.append("\n# Reference Datum").append("\n");
+			out.append("\n# Reference Datum").append("\n");
 			for (Transform t : datumReferences) {
 				Vertex v = new Vertex(new Vector3d(0, 0, 0), new Vector3d(0, 0, 1)).transform(t);
 				Vertex v1 = new Vertex(new Vector3d(0, 0, 1), new Vector3d(0, 0, 1)).transform(t);
 				mapping.put(v, startingIndex++);
 				mapping.put(v1, startingIndex++);
 				mappingTF.put(t, v);
-				v.toObjString(sb);
-				v1.toObjString(sb);
+				line.setLength(0);
+				out.append(v.toObjString(line));
+				line.setLength(0);
+				out.append(v1.toObjString(line));
 			}
-			sb.append("\n# Datum Lines").append("\n");
+			out.append("\n# Datum Lines").append("\n");
 			for (Transform t : mappingTF.keySet()) {
 				Vertex key = mappingTF.get(t);
 				Integer obj = mapping.get(key);
-				sb.append("\nl ").append(obj + " ").append(obj + 1).append("\n");
+				out.append("\nl ").append(obj + " ").append(String.valueOf(obj + 1)).append("\n");
 			}
 		}
 
-		sb.append("\n# Faces").append("\n");
+		out.append("\n# Faces").append("\n");
 
-		for (PolygonStruct ps : indices) {
+		for (int[] pVerts : indices) {
 			// we triangulate the polygon to ensure
 			// compatibility with 3d printer software
-			List<Integer> pVerts = ps.indices;
-			if (pVerts.size() != 3)
+			if (pVerts.length != 3)
 				throw new RuntimeException(name + " can not be exported until triangulated");
-			int index1 = pVerts.get(0);
-			for (int i = 0; i < pVerts.size() - 2; i++) {
-				int index2 = pVerts.get(i + 1);
-				int index3 = pVerts.get(i + 2);
-
-				sb.append("f ").append(index1).append(" ").append(index2).append(" ").append(index3).append("\n");
+			int index1 = pVerts[0];
+			for (int i = 0; i < pVerts.length - 2; i++) {
+				int index2 = pVerts[i + 1];
+				int index3 = pVerts[i + 2];
+
+				line.setLength(0);
+				line.append("f ").append(index1).append(" ").append(index2).append(" ").append(index3).append("\n");
+				out.append(line);
 			}
 		}
 
-		sb.append("\n# End Group v3d.csg").append("\n");
-
-		return sb;
+		out.append("\n# End Group v3d.csg").append("\n");
 	}
 
 	/**
@@ -1814,6 +2054,11 @@ public class CSG implements IuserAPI {
 
 	/**
 	 * Returns a transformed copy of this CSG.
+	 * <p>
+	 * The copy clones the polygons of this CSG and applies the transform, composed
+	 * with the transforms of the CSGs it was derived from, when its polygons are
+	 * first needed. Chains like {@code part.movex(1).rotz(90).toZMin()} transform
+	 * the polygons once. CSGs with weighted vertices are transformed at once.
 	 *
 	 * @param transform the transform to apply
 	 *
@@ -1821,16 +2066,55 @@ public class CSG implements IuserAPI {
 	 */
 	public CSG transformed(Transform transform) {
 
-		if (getPolygons().isEmpty()) {
-			return clone();
+		Transform pending;
+		List<Polygon> source;
+		synchronized (this) {
+			pending = pendingTransform;
+			source = polygons;
 		}
+		if (pending == null) {
+			if (source == null || source.isEmpty()) {
+				return clone();
+			}
+			if (isWeighted(source)) {
+				// weighted vertices move part of the way, the transforms do not compose
+				List<Polygon> newpolygons = this.getPolygons().stream().map(p -> p.transformed(transform))
+						.collect(Collectors.toList());
 
-		List<Polygon> newpolygons = this.getPolygons().stream().map(p -> p.transformed(transform))
-				.collect(Collectors.toList());
+				CSG csg = CSG.fromPolygons(newpolygons).optimization(getOptType());
 
-		CSG csg = CSG.fromPolygons(newpolygons).optimization(getOptType());
+				// csg.setStorage(storage);
 
-		// csg.setStorage(storage);
+				if (getName().length() != 0) {
+					csg.setName(name);
+				}
+
+				return csg.historySync(this);
+			}
+		}
+
+		// the transform is composed with the pending one and applied when the
+		// polygons are needed
+		Transform composed = new Transform().apply(transform);
+		CSG csg = new CSG().optimization(getOptType());
+		if (pending != null) {
+			composed.apply(pending);
+			csg.polygons = source;
+		} else {
+			// the source polygons may be changed later through getPolygons() or the
+			// list this csg was made from, the copy keeps its own shallow clones
+			List<Polygon> snapshot = new ArrayList<>(source.size());
+			for (Polygon p : source) {
+				if (p != null) {
+					snapshot.add(p.clone());
+				}
+			}
+			csg.polygons = snapshot;
+		}
+		csg.pendingTransform = composed;
+		if (bounds != null) {
+			csg.bounds = transformedBounds(bounds, transform);
+		}
 
 		if (getName().length() != 0) {
 			csg.setName(name);
@@ -1839,6 +2123,62 @@ public class CSG implements IuserAPI {
 		return csg.historySync(this);
 	}
 
+	private static boolean isWeighted(List<Polygon> polygons) {
+		for (Polygon p : polygons) {
+			for (Vertex v : p.vertices) {
+				if (v.getWeight() != 1.0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Transforms the corners of a bounding box. The result is exact if the
+	 * transform maps each axis onto an axis, as moves, scales, mirrors and quarter
+	 * turns do.
+	 *
+	 * @param b         the bounds
+	 * @param transform the transform
+	 * @return the bounds of the transformed box, null if they would not be exact
+	 */
+	private static Bounds transformedBounds(Bounds b, Transform transform) {
+		Matrix4d m = transform.getInternalMatrix();
+		if (!isAxisAligned(m.m00, m.m01, m.m02) || !isAxisAligned(m.m10, m.m11, m.m12)
+				|| !isAxisAligned(m.m20, m.m21, m.m22)) {
+			return null;
+		}
+		Vector3d min = b.getMin();
+		Vector3d max = b.getMax();
+		double[] corners = new double[24];
+		for (int i = 0; i < 8; i++) {
+			corners[i * 3] = (i & 1) == 0 ? min.x : max.x;
+			corners[i * 3 + 1] = (i & 2) == 0 ? min.y : max.y;
+			corners[i * 3 + 2] = (i & 4) == 0 ? min.z : max.z;
+		}
+		double[] amounts = new double[8];
+		Arrays.fill(amounts, 1.0);
+		transform.transform(corners, amounts, 8);
+		double[] lo = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		double[] hi = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (int i = 0; i < 24; i++) {
+			lo[i % 3] = Math.min(lo[i % 3], corners[i]);
+			hi[i % 3] = Math.max(hi[i % 3], corners[i]);
+		}
+		return new Bounds(new Vector3d(lo[0], lo[1], lo[2]), new Vector3d(hi[0], hi[1], hi[2]));
+	}
+
+	/**
+	 * Checks that a matrix row has one entry, the others being rounding noise
+	 * like the cosine of a quarter turn.
+	 */
+	private static boolean isAxisAligned(double a, double b, double c) {
+		double big = Math.max(Math.abs(a), Math.max(Math.abs(b), Math.abs(c))) * 1.0e-12;
+		int entries = (Math.abs(a) > big ? 1 : 0) + (Math.abs(b) > big ? 1 : 0) + (Math.abs(c) > big ? 1 : 0);
+		return entries <= 1;
+	}
+
 	/**
 	 * Returns the bounds of this csg. SIDE EFFECT bounds is created and simply
 	 * returned if existing
@@ -1848,9 +2188,25 @@ public class CSG implements IuserAPI {
 	public Bounds getBounds() {
 		if (bounds != null)
 			return bounds;
-		if (getPolygons().isEmpty()) {
-			bounds = new Bounds(Vector3d.ZERO, Vector3d.ZERO);
-			return bounds;
+		Transform pending;
+		List<Polygon> source;
+		synchronized (this) {
+			pending = pendingTransform;
+			source = polygons;
+		}
+		if (pending != null) {
+			// the bounds of the source polygons moved along, if that is exact
+			bounds = transformedBounds(boundsOf(source), pending);
+			if (bounds != null)
+				return bounds;
+		}
+		bounds = boundsOf(getPolygons());
+		return bounds;
+	}
+
+	private static Bounds boundsOf(List<Polygon> polygons) {
+		if (polygons.isEmpty()) {
+			return new Bounds(Vector3d.ZERO, Vector3d.ZERO);
 		}
 
 		double minX = Double.POSITIVE_INFINITY;
@@ -1861,7 +2217,7 @@ public class CSG implements IuserAPI {
 		double maxY = Double.NEGATIVE_INFINITY;
 		double maxZ = Double.NEGATIVE_INFINITY;
 
-		for (Polygon p : getPolygons()) {
+		for (Polygon p : polygons) {
 
 			for (int i = 0; i < p.vertices.size(); i++) {
 
@@ -1891,8 +2247,7 @@ public class CSG implements IuserAPI {
 
 		} // end for polygon
 
-		bounds = new Bounds(new Vector3d(minX, minY, minZ), new Vector3d(maxX, maxY, maxZ));
-		return bounds;
+		return new Bounds(new Vector3d(minX, minY, minZ), new Vector3d(maxX, maxY, maxZ));
 	}
 
 	public Vector3d getCenter() {
@@ -2025,6 +2380,65 @@ public class CSG implements IuserAPI {
 		defaultOptType = optType;
 	}
 
+	/**
+	 * Gets the splitting plane selection used when building BSP trees.
+	 *
+	 * @return the splitPlaneType
+	 */
+	public static SplitPlaneType getDefaultSplitPlaneType() {
+		return defaultSplitPlaneType;
+	}
+
+	/**
+	 * Sets the splitting plane selection used when building BSP trees.
+	 *
+	 * @param splitPlaneType the splitPlaneType to set
+	 */
+	public static void setDefaultSplitPlaneType(SplitPlaneType splitPlaneType) {
+		defaultSplitPlaneType = splitPlaneType;
+	}
+
+	/**
+	 * Checks whether BSP operations run on the fork/join pool by default.
+	 *
+	 * @return the defaultParallelBSP
+	 */
+	public static boolean isDefaultParallelBSP() {
+		return defaultParallelBSP;
+	}
+
+	/**
+	 * Sets whether BSP operations run on the fork/join pool by default. When set,
+	 * independent BSP subtrees are built and clipped concurrently so booleans
+	 * scale with the number of cores.
+	 *
+	 * @param parallelBSP the defaultParallelBSP to set
+	 */
+	public static void setDefaultParallelBSP(boolean parallelBSP) {
+		defaultParallelBSP = parallelBSP;
+	}
+
+	/**
+	 * Checks whether the BSP operations of this csg run on the fork/join pool.
+	 *
+	 * @return the parallelBSP
+	 */
+	public boolean isParallelBSP() {
+		return parallelBSP != null ? parallelBSP : defaultParallelBSP;
+	}
+
+	/**
+	 * Sets whether the BSP operations of this csg run on the fork/join pool,
+	 * overriding {@link #setDefaultParallelBSP(boolean)}.
+	 *
+	 * @param parallelBSP the parallelBSP to set
+	 * @return this CSG
+	 */
+	public CSG setParallelBSP(boolean parallelBSP) {
+		this.parallelBSP = parallelBSP;
+		return this;
+	}
+
 	/**
 	 * Sets the opt type.
 	 *
@@ -2042,7 +2456,9 @@ public class CSG implements IuserAPI {
 	 */
 	public CSG setPolygons(List<Polygon> polygons) {
 		bounds = null;
+		polygonIndex = null;
 		triangulated = false;
+		pendingTransform = null;
 		this.polygons = polygons;
 		return this;
 	}
@@ -2062,6 +2478,41 @@ public class CSG implements IuserAPI {
 		NONE
 	}
 
+	/**
+	 * The Enum ProvenanceLevel. Selects which script lines, the stack frames
+	 * outside of .java files, a new csg records as its creation events.
+	 */
+	public static enum ProvenanceLevel {
+
+		/** Record nothing. */
+		OFF,
+
+		/**
+		 * Record the innermost script line, the line creating the csg, if it is
+		 * among the innermost 64 frames.
+		 */
+		FIRST_FRAME,
+
+		/** Record every script line of the stack, the default. */
+		FULL
+	}
+
+	/**
+	 * The Enum SplitPlaneType. Selects how a BSP node picks the plane it
+	 * partitions its polygons with.
+	 */
+	public static enum SplitPlaneType {
+
+		/** Always split along the first polygon, as in csg.js. */
+		FIRST_POLYGON,
+
+		/**
+		 * Score sampled candidate planes on split count and front/back balance.
+		 * Produces shallower trees and fewer fragments on large meshes.
+		 */
+		BALANCED
+	}
+
 	/**
 	 * Hail Zeon! In case you forget the name of minkowski and are a Gundam fan
 	 * 
@@ -2233,35 +2684,16 @@ public class CSG implements IuserAPI {
 
 	private CSG addStackTrace(Exception creationEventStackTrace2) {
 		for (StackTraceElement el : creationEventStackTrace2.getStackTrace()) {
-			try {
-				if (!el.getFileName().endsWith(".java") && el.getLineNumber() > 0) {
-					boolean dupLine = false;
-					String thisline = el.getFileName() + ":" + el.getLineNumber();
-					for (String s : groovyFileLines) {
-						if (s.contentEquals(thisline)) {
-							dupLine = true;
-							// com.neuronrobotics.sdk.common.Log.error("Dupe: "+thisline);
-							break;
-						}
-					}
-					if (dupLine == false) {
-						groovyFileLines.add(thisline);
-						// com.neuronrobotics.sdk.common.Log.error("Line: "+thisline);
-						// for(String s:groovyFileLines){
-						// //com.neuronrobotics.sdk.common.Log.error("\t\t "+s);
-						// creationEventStackTrace2.printStackTrace();
-						// }
-					}
-				}
-			} catch (NullPointerException ex) {
-
+			String thisline = Provenance.line(el);
+			if (thisline != null) {
+				addLine(thisline);
 			}
 		}
 		return this;
 	}
 
 	public CSG historySync(CSG dyingCSG) {
-		if (useStackTraces) {
+		if (provenanceLevel != ProvenanceLevel.OFF && dyingCSG != this) {
 			this.addCreationEventStringList(dyingCSG.getCreationEventStackTraceList());
 		}
 		Set<String> params = dyingCSG.getParameters();
@@ -2284,32 +2716,49 @@ public class CSG implements IuserAPI {
 	}
 
 	public CSG addCreationEventStringList(ArrayList<String> incoming) {
-		if (useStackTraces)
+		if (provenanceLevel != ProvenanceLevel.OFF)
 			for (String s : incoming) {
-				addCreationEventString(s);
+				addLine(s);
 			}
 
 		return this;
 	}
 
 	public CSG addCreationEventString(String thisline) {
-		if (useStackTraces) {
-			boolean dupLine = false;
-			for (String s : groovyFileLines) {
-				if (s.contentEquals(thisline)) {
-					dupLine = true;
-					break;
-				}
-			}
-			if (!dupLine) {
-				groovyFileLines.add(thisline);
-			}
+		if (provenanceLevel != ProvenanceLevel.OFF) {
+			addLine(Provenance.intern(thisline));
 		}
 
 		return this;
 	}
 
+	private void addLine(String thisline) {
+		if (groovyFileLineSet != null) {
+			if (groovyFileLineSet.add(thisline)) {
+				groovyFileLines.add(thisline);
+			}
+			return;
+		}
+		for (String s : groovyFileLines) {
+			if (s.equals(thisline)) {
+				return;
+			}
+		}
+		groovyFileLines.add(thisline);
+		if (groovyFileLines.size() > 8) {
+			groovyFileLineSet = new HashSet<>(groovyFileLines);
+		}
+	}
+
+	/**
+	 * Gets the script lines recorded as creation events of this csg. The list is
+	 * live, changes to it are seen by this csg.
+	 *
+	 * @return the creation event lines
+	 */
 	public ArrayList<String> getCreationEventStackTraceList() {
+		// the caller may change the list, the index is built again on the next add
+		groovyFileLineSet = null;
 		return groovyFileLines;
 	}
 
@@ -2413,7 +2862,8 @@ public class CSG implements IuserAPI {
 		// bounding boxes
 		if (this.getMaxX() > incoming.getMinX() && this.getMinX() < incoming.getMaxX()
 				&& this.getMaxY() > incoming.getMinY() && this.getMinY() < incoming.getMaxY()
-				&& this.getMaxZ() > incoming.getMinZ() && this.getMinZ() < incoming.getMaxZ()) {
+				&& this.getMaxZ() > incoming.getMinZ() && this.getMinZ() < incoming.getMaxZ()
+				&& mayTouch(incoming)) {
 			// Run a full intersection
 			CSG inter = this.intersect(incoming);
 			if (inter.getPolygons().size() > 0) {
@@ -2424,6 +2874,37 @@ public class CSG implements IuserAPI {
 		return false;
 	}
 
+	/**
+	 * Cheap conservative test whether this csg and the specified csg can share
+	 * any volume. If no polygon of either lies within the bounding box of the
+	 * other, neither surface crosses the other and neither solid contains the
+	 * other, so they are disjoint.
+	 *
+	 * @param csg the other csg
+	 * @return false if the two csgs are certainly disjoint
+	 */
+	private boolean mayTouch(CSG csg) {
+		return getPolygonIndex().intersectsAny(csg.getBounds())
+				|| csg.getPolygonIndex().intersectsAny(getBounds());
+	}
+
+	/**
+	 * Gets the bounding volume hierarchy over the polygons of this csg. The index
+	 * is built lazily and rebuilt when the polygon list was replaced or changed
+	 * size.
+	 *
+	 * @return the polygon index
+	 */
+	PolygonIndex getPolygonIndex() {
+		List<Polygon> current = getPolygons();
+		PolygonIndex index = polygonIndex;
+		if (index == null || !index.isIndexOf(current)) {
+			index = new PolygonIndex(current);
+			polygonIndex = index;
+		}
+		return index;
+	}
+
 	public static ICSGProgress getProgressMoniter() {
 		return progressMoniter;
 	}
@@ -2521,11 +3002,70 @@ public class CSG implements IuserAPI {
 	}
 
 	public static boolean isUseStackTraces() {
-		return useStackTraces;
+		return provenanceLevel != ProvenanceLevel.OFF;
 	}
 
+	/**
+	 * Turns the creation event tracking on or off. Turning it on keeps the
+	 * current level, or selects {@link ProvenanceLevel#FULL} if it was off.
+	 *
+	 * @param useStackTraces true to track the script lines of new csgs
+	 */
 	public static void setUseStackTraces(boolean useStackTraces) {
-		CSG.useStackTraces = useStackTraces;
+		if (!useStackTraces) {
+			provenanceLevel = ProvenanceLevel.OFF;
+		} else if (provenanceLevel == ProvenanceLevel.OFF) {
+			provenanceLevel = ProvenanceLevel.FULL;
+		}
+	}
+
+	/**
+	 * Gets how many script lines every new csg records, see
+	 * {@link #getCreationEventStackTraceList()}.
+	 *
+	 * @return the provenanceLevel
+	 */
+	public static ProvenanceLevel getProvenanceLevel() {
+		return provenanceLevel;
+	}
+
+	/**
+	 * Sets how many script lines every new csg records. The default,
+	 * {@link ProvenanceLevel#FULL}, records every script line of the stack;
+	 * {@link ProvenanceLevel#FIRST_FRAME} is cheaper but only records the line
+	 * that created the csg.
+	 *
+	 * @param level the provenanceLevel to set
+	 */
+	public static void setProvenanceLevel(ProvenanceLevel level) {
+		provenanceLevel = Objects.requireNonNull(level);
+	}
+
+	/**
+	 * Gets the number of stacks searched for script lines since the last
+	 * {@link #resetProvenanceCounters()}.
+	 *
+	 * @return the number of captures
+	 */
+	public static long getProvenanceCaptureCount() {
+		return Provenance.getCaptureCount();
+	}
+
+	/**
+	 * Gets the total time spent searching stacks for script lines since the
+	 * last {@link #resetProvenanceCounters()}.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public static long getProvenanceCaptureNanos() {
+		return Provenance.getCaptureNanos();
+	}
+
+	/**
+	 * Resets the provenance capture counters.
+	 */
+	public static void resetProvenanceCounters() {
+		Provenance.resetCounters();
 	}
 
 	public ArrayList<Transform> getDatumReferences() {
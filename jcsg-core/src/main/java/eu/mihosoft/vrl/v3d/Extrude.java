@@ -40,7 +40,6 @@ import java.util.Collections;
 import java.util.List;
 
 import eu.mihosoft.vrl.v3d.ext.org.poly2tri.PolygonUtil;
-import eu.mihosoft.vrl.v3d.ext.quickhull3d.HullUtil;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -609,25 +608,28 @@ public class Extrude {
 
 	public static ArrayList<CSG> revolve(CSG slice, double radius, double archLen, List<List<Vector3d>> points,
 			int numSlices) {
-		ArrayList<CSG> parts = new ArrayList<CSG>();
 		double slices = (double) numSlices;
 		double increment = archLen / slices;
 		CSG slicePRofile = slice.movey(radius);
 
+		ArrayList<Transform[]> stations = new ArrayList<>();
 		for (double i = 0; i < (archLen + increment); i += increment) {
-			parts.add(slicePRofile.rotz(i));
+			stations.add(new Transform[] { new Transform().rotZ(i) });
 		}
 		if (points != null) {
 			ArrayList<Transform> pathtransforms = pathToTransforms(points, numSlices);
-			for (int i = 0; i < parts.size(); i++) {
-				CSG sweep = parts.get(i).transformed(pathtransforms.get(i));
-				parts.set(i, sweep);
+			for (int i = 0; i < stations.size(); i++) {
+				stations.set(i, new Transform[] { stations.get(i)[0], pathtransforms.get(i) });
 			}
 		}
-		for (int i = 0; i < parts.size() - 1; i++) {
-
-			CSG sweep = CSG.hullAll(parts.get(i), parts.get(i + 1));
-			parts.set(i, sweep);
+		ArrayList<CSG> parts = SweepHull.segmentsOfChains(Collections.nCopies(stations.size(), slicePRofile),
+				stations);
+		if (!stations.isEmpty()) {
+			CSG last = slicePRofile;
+			for (Transform t : stations.get(stations.size() - 1)) {
+				last = last.transformed(t);
+			}
+			parts.add(last);
 		}
 
 		return parts;
@@ -635,48 +637,37 @@ public class Extrude {
 
 	public static ArrayList<CSG> bezier(CSG slice, ArrayList<Double> controlA, ArrayList<Double> controlB,
 			ArrayList<Double> endPoint, int numSlices) {
-		ArrayList<CSG> parts = new ArrayList<CSG>();
-
-		for (int i = 0; i < numSlices; i++) {
-			parts.add(0, slice.clone());
-		}
-		return bezier(parts, controlA, controlB, endPoint);
+		ArrayList<Transform> p = bezierToTransforms(fromDouble(controlA), fromDouble(controlB), fromDouble(endPoint),
+				numSlices);
+		return sweep(Collections.nCopies(numSlices, slice), p);
 	}
 
 	public static ArrayList<CSG> bezier(ArrayList<CSG> s, ArrayList<Double> controlA, ArrayList<Double> controlB,
 			ArrayList<Double> endPoint) {
-		ArrayList<CSG> slice = moveBezier(s, controlA, controlB, endPoint);
-
-		for (int i = 0; i < slice.size() - 1; i++) {
-			// Polygon p1 =Slice.slice(slice.get(i), new Transform(), 0).get(0);
-			// Polygon p2 =Slice.slice(slice.get(i+1), new Transform(), 0).get(0);
-			// CSG sweep = polygons(p1, p2);
-			CSG sweep = HullUtil.hull(slice.get(i), slice.get(i + 1));
-
-			slice.set(i, sweep);
-		}
-		return slice;
+		ArrayList<Transform> p = bezierToTransforms(fromDouble(controlA), fromDouble(controlB), fromDouble(endPoint),
+				s.size());
+		return sweep(s, p);
 	}
 
 	public static ArrayList<CSG> hull(ArrayList<CSG> s, ArrayList<Transform> p) {
-		ArrayList<CSG> slice = move(s, p);
-		for (int i = 0; i < slice.size() - 1; i++) {
-			// Polygon p1 =Slice.slice(slice.get(i), new Transform(), 0).get(0);
-			// Polygon p2 =Slice.slice(slice.get(i+1), new Transform(), 0).get(0);
-			// CSG sweep = polygons(p1, p2);
-			CSG sweep = HullUtil.hull(slice.get(i), slice.get(i + 1));
-
-			slice.set(i, sweep);
-		}
-		return slice;
+		return sweep(s, p);
 	}
 
 	public static ArrayList<CSG> hull(CSG c, ArrayList<Transform> p) {
-		ArrayList<CSG> s = new ArrayList<>();
-		for (int i = 0; i < p.size(); i++) {
-			s.add(c.clone());
+		return sweep(Collections.nCopies(p.size(), c), p);
+	}
+
+	/**
+	 * Hulls the consecutive moved slices; the last slice is returned moved but
+	 * not hulled.
+	 */
+	private static ArrayList<CSG> sweep(List<CSG> s, List<Transform> p) {
+		int count = Math.min(s.size(), p.size());
+		ArrayList<CSG> parts = SweepHull.segments(s, p);
+		if (count > 0) {
+			parts.add(s.get(count - 1).transformed(p.get(count - 1)));
 		}
-		return hull(s, p);
+		return parts;
 	}
 
 	public static ArrayList<CSG> linear(ArrayList<CSG> s, ArrayList<Double> endPoint) {
@@ -0,0 +1,333 @@
+/*
+ * ManifoldRepair.java
+ */
+package eu.mihosoft.vrl.v3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Repairs T-junctions in a polygon soup. Every vertex that lies on the interior
+ * of an edge of another polygon is inserted into that edge, so neighbouring
+ * polygons share their vertices and the mesh becomes manifold after
+ * triangulation.
+ * <p>
+ * Vertex positions are hashed into a uniform grid whose cell size is the average
+ * edge length, so each edge is only tested against the vertices in the cells its
+ * bounding box covers instead of against every vertex of the mesh. Polygons are
+ * processed in chunks on the fork/join pool.
+ */
+final class ManifoldRepair {
+
+	/** Number of polygons processed between two progress reports. */
+	private static final int CHUNK_SIZE = 4096;
+
+	private final List<Polygon> polygons;
+	private final double tolerance;
+
+	/** x, y, z of every distinct vertex position. */
+	private double[] points;
+	/** One vertex per distinct position. */
+	private Vertex[] pointVertices;
+	/** Index of the only polygon using a position, or -1 if several do. */
+	private int[] pointOwner;
+	private int pointCount;
+
+	private double cellSize;
+	private double originX;
+	private double originY;
+	private double originZ;
+
+	/** Open addressed grid: cell key to first point, points chained by next. */
+	private long[] cellKeys;
+	private int[] cellHeads;
+	private int[] nextInCell;
+	private int cellMask;
+
+	/**
+	 * Creates a repair pass over the specified polygons.
+	 *
+	 * @param polygons  the polygons, modified in place
+	 * @param tolerance the distance within which a point counts as on an edge
+	 */
+	ManifoldRepair(List<Polygon> polygons, double tolerance) {
+		this.polygons = polygons;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Inserts all vertices that lie on foreign edges.
+	 *
+	 * @param progress called after each chunk with the number of processed
+	 *                 polygons and the number of inserted vertices so far
+	 * @return the number of inserted vertices
+	 */
+	int run(BiConsumer<Integer, Integer> progress) {
+		int size = polygons.size();
+		if (size < 2) {
+			return 0;
+		}
+		index();
+
+		AtomicInteger added = new AtomicInteger();
+		for (int start = 0; start < size; start += CHUNK_SIZE) {
+			int end = Math.min(size, start + CHUNK_SIZE);
+			// the grid is a snapshot, so the polygons of a chunk can be updated
+			// independently of each other
+			IntStream.range(start, end).parallel().forEach(i -> added.addAndGet(repair(i)));
+			progress.accept(end, added.get());
+			if (Thread.currentThread().isInterrupted()) {
+				break;
+			}
+		}
+		return added.get();
+	}
+
+	/**
+	 * Collects the distinct vertex positions and hashes them into the grid.
+	 */
+	private void index() {
+		int vertexCount = 0;
+		double edgeLength = 0;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double minZ = Double.POSITIVE_INFINITY;
+		for (Polygon p : polygons) {
+			List<Vertex> vertices = p.vertices;
+			for (int k = 0; k < vertices.size(); k++) {
+				Vector3d a = vertices.get(k).pos;
+				Vector3d b = vertices.get((k + 1) % vertices.size()).pos;
+				edgeLength += distance(a, b.x, b.y, b.z);
+				minX = Math.min(minX, a.x);
+				minY = Math.min(minY, a.y);
+				minZ = Math.min(minZ, a.z);
+			}
+			vertexCount += vertices.size();
+		}
+		cellSize = Math.max(edgeLength / Math.max(1, vertexCount), tolerance * 1024);
+		originX = minX;
+		originY = minY;
+		originZ = minZ;
+
+		int capacity = Integer.highestOneBit(Math.max(16, vertexCount * 2) - 1) << 1;
+		cellKeys = new long[capacity];
+		cellHeads = new int[capacity];
+		Arrays.fill(cellHeads, -1);
+		cellMask = capacity - 1;
+
+		points = new double[vertexCount * 3];
+		pointVertices = new Vertex[vertexCount];
+		pointOwner = new int[vertexCount];
+		nextInCell = new int[vertexCount];
+
+		for (int i = 0; i < polygons.size(); i++) {
+			for (Vertex v : polygons.get(i).vertices) {
+				addPoint(v, i);
+			}
+		}
+	}
+
+	private void addPoint(Vertex v, int owner) {
+		double x = v.pos.x;
+		double y = v.pos.y;
+		double z = v.pos.z;
+		int slot = slot(cell(x, originX), cell(y, originY), cell(z, originZ), true);
+		for (int p = cellHeads[slot]; p >= 0; p = nextInCell[p]) {
+			int b = p * 3;
+			if (points[b] == x && points[b + 1] == y && points[b + 2] == z) {
+				if (pointOwner[p] != owner) {
+					pointOwner[p] = -1;
+				}
+				return;
+			}
+		}
+		int p = pointCount++;
+		int b = p * 3;
+		points[b] = x;
+		points[b + 1] = y;
+		points[b + 2] = z;
+		pointVertices[p] = v;
+		pointOwner[p] = owner;
+		nextInCell[p] = cellHeads[slot];
+		cellHeads[slot] = p;
+	}
+
+	private int cell(double value, double origin) {
+		return (int) Math.floor((value - origin) / cellSize);
+	}
+
+	private static long key(int x, int y, int z) {
+		return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+	}
+
+	/**
+	 * Finds the table slot of a cell.
+	 *
+	 * @return the slot, or -1 if the cell is empty and {@code create} is false
+	 */
+	private int slot(int x, int y, int z, boolean create) {
+		long key = key(x, y, z);
+		long h = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h ^ (h >>> 32)) & cellMask;
+		while (cellHeads[slot] >= 0) {
+			if (cellKeys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & cellMask;
+		}
+		if (!create) {
+			return -1;
+		}
+		cellKeys[slot] = key;
+		return slot;
+	}
+
+	/**
+	 * Computes the vertex list of one polygon with all foreign vertices on its
+	 * edges inserted, and replaces the vertices if anything was found.
+	 *
+	 * @param polygonIndex the polygon to repair
+	 * @return the number of inserted vertices
+	 */
+	private int repair(int polygonIndex) {
+		Polygon polygon = polygons.get(polygonIndex);
+		List<Vertex> vertices = polygon.vertices;
+		int n = vertices.size();
+		List<Vertex> result = null;
+		int added = 0;
+		double[] found = new double[8];
+		for (int k = 0; k < n; k++) {
+			Vertex p1 = vertices.get(k);
+			Vertex p2 = vertices.get((k + 1) % n);
+			int count;
+			while ((count = onEdge(p1.pos, p2.pos, polygonIndex, found)) == -1) {
+				found = new double[found.length * 2];
+			}
+			if (result == null && count > 0) {
+				result = new ArrayList<>(n + count);
+				result.addAll(vertices.subList(0, k + 1));
+			} else if (result != null) {
+				result.add(p1);
+			}
+			if (count > 0) {
+				sortByParameter(found, count);
+				for (int c = 0; c < count; c++) {
+					Vertex v = pointVertices[(int) found[c * 2 + 1]].clone();
+					v.normal = polygon.plane.getNormal().clone();
+					result.add(v);
+				}
+				added += count;
+			}
+		}
+		if (result != null) {
+			vertices.clear();
+			vertices.addAll(result);
+		}
+		return added;
+	}
+
+	/**
+	 * Finds the distinct points on the interior of the edge from {@code a} to
+	 * {@code b} that do not belong only to the polygon being repaired. Pairs of
+	 * (distance from {@code a}, point index) are written to {@code found}.
+	 *
+	 * @return the number of points, or -1 if {@code found} was too small
+	 */
+	private int onEdge(Vector3d a, Vector3d b, int polygonIndex, double[] found) {
+		int count = 0;
+		double ab = distance(a, b.x, b.y, b.z);
+		int x0 = cell(Math.min(a.x, b.x) - tolerance, originX);
+		int x1 = cell(Math.max(a.x, b.x) + tolerance, originX);
+		int y0 = cell(Math.min(a.y, b.y) - tolerance, originY);
+		int y1 = cell(Math.max(a.y, b.y) + tolerance, originY);
+		int z0 = cell(Math.min(a.z, b.z) - tolerance, originZ);
+		int z1 = cell(Math.max(a.z, b.z) + tolerance, originZ);
+		double cells = (x1 - (double) x0 + 1) * (y1 - (double) y0 + 1) * (z1 - (double) z0 + 1);
+		if (cells > pointCount) {
+			// an edge much longer than the average one, scanning is cheaper
+			for (int p = 0; p < pointCount && count >= 0; p++) {
+				count = test(p, a, b, ab, polygonIndex, found, count);
+			}
+			return count;
+		}
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				for (int z = z0; z <= z1; z++) {
+					int slot = slot(x, y, z, false);
+					if (slot < 0) {
+						continue;
+					}
+					for (int p = cellHeads[slot]; p >= 0 && count >= 0; p = nextInCell[p]) {
+						count = test(p, a, b, ab, polygonIndex, found, count);
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Tests one point against the edge from {@code a} to {@code b} and records
+	 * it in {@code found} if it lies on the edge interior.
+	 *
+	 * @return the new number of found points, or -1 if {@code found} is full
+	 */
+	private int test(int p, Vector3d a, Vector3d b, double ab, int polygonIndex, double[] found, int count) {
+		if (pointOwner[p] == polygonIndex) {
+			return count;
+		}
+		int i = p * 3;
+		double px = points[i];
+		double py = points[i + 1];
+		double pz = points[i + 2];
+		// coincident with an end point, nothing to insert
+		if (near(a, px, py, pz) || near(b, px, py, pz)) {
+			return count;
+		}
+		double ap = distance(a, px, py, pz);
+		double pb = distance(b, px, py, pz);
+		if (Math.abs(ab - (ap + pb)) >= tolerance) {
+			return count;
+		}
+		if (count * 2 + 1 >= found.length) {
+			return -1;
+		}
+		found[count * 2] = ap;
+		found[count * 2 + 1] = p;
+		return count + 1;
+	}
+
+	private boolean near(Vector3d v, double x, double y, double z) {
+		return Math.abs(v.x - x) <= tolerance && Math.abs(v.y - y) <= tolerance && Math.abs(v.z - z) <= tolerance;
+	}
+
+	private static double distance(Vector3d v, double x, double y, double z) {
+		double dx = v.x - x;
+		double dy = v.y - y;
+		double dz = v.z - z;
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Insertion sort of (distance, index) pairs by distance; edges rarely carry
+	 * more than a handful of points.
+	 */
+	private static void sortByParameter(double[] found, int count) {
+		for (int i = 1; i < count; i++) {
+			double t = found[i * 2];
+			double p = found[i * 2 + 1];
+			int j = i - 1;
+			while (j >= 0 && found[j * 2] > t) {
+				found[(j + 1) * 2] = found[j * 2];
+				found[(j + 1) * 2 + 1] = found[j * 2 + 1];
+				j--;
+			}
+			found[(j + 1) * 2] = t;
+			found[(j + 1) * 2 + 1] = p;
+		}
+	}
+}
@@ -0,0 +1,486 @@
+/*
+ * MeshSlice.java
+ */
+package eu.mihosoft.vrl.v3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Slices a CSG by intersecting its polygons with the slice plane.
+ * <p>
+ * Every polygon crossing the plane contributes one segment, the segments are
+ * chained into closed loops through their welded end points, and the loops
+ * are classified into outlines and holes by how deeply they are nested.
+ * Nothing is rendered, so this engine works without a display and does not
+ * depend on a raster resolution.
+ * <p>
+ * Like the raster engine the section is taken in the frame of the slice
+ * plane, at z = 0 if the part reaches it, otherwise at the bottom of a part
+ * above the plane or just below the top of a part below it. The section at a
+ * height is the section just above it, so a part standing on the plane is
+ * sliced through its bottom face. Outlines are counter clockwise, each is
+ * followed by its holes, which are clockwise.
+ */
+public class MeshSlice implements ISlice {
+
+	/** Thickness of the slab the raster engine cuts the section from. */
+	static final double SLICE_THICKNESS = 0.00001;
+
+	/**
+	 * Slices a CSG.
+	 *
+	 * @param incoming            the CSG to slice
+	 * @param slicePlane          the frame of the slice plane, the section is
+	 *                            taken at its z = 0
+	 * @param normalInsetDistance offset of the part before slicing, see
+	 *                            {@link CSG#toolOffset(Number)}
+	 * @return the outlines and holes of the section, in the slice plane frame
+	 */
+	@Override
+	public List<Polygon> slice(CSG incoming, Transform slicePlane, double normalInsetDistance) {
+		Faces faces = faces(incoming, slicePlane, normalInsetDistance);
+		if (faces.maxZ - faces.minZ < SLICE_THICKNESS) {
+			throw new RuntimeException("Too thin to slice! " + SLICE_THICKNESS + " mm minimum");
+		}
+		double height = 0;
+		if (faces.maxZ < SLICE_THICKNESS) {
+			height = faces.maxZ - SLICE_THICKNESS;
+		} else if (faces.minZ > SLICE_THICKNESS) {
+			height = faces.minZ;
+		}
+		IntList all = new IntList();
+		for (int i = 0; i < faces.size(); i++) {
+			all.add(i);
+		}
+		return faces.section(height, all, 0);
+	}
+
+	/**
+	 * Slices a CSG into layers of the same height, stacked on a base plane.
+	 * <p>
+	 * Layer k spans from k to k + 1 layer heights above the base plane, the
+	 * layers overlapping the part are returned from the lowest up. A layer is
+	 * sectioned in the middle of the part of it the CSG fills, and its outlines
+	 * and holes are placed at the bottom of the layer in the base plane frame,
+	 * so extruding them by the layer height rebuilds the stack.
+	 * <p>
+	 * The polygons are sorted by height once; the layers are swept bottom up in
+	 * parallel runs, each layer only cuts the polygons spanning it.
+	 *
+	 * @param incoming    the CSG to slice
+	 * @param basePlane   the frame of the base plane
+	 * @param layerHeight the height of a layer
+	 * @return the outlines and holes of every layer
+	 */
+	public List<List<Polygon>> sliceStack(CSG incoming, Transform basePlane, double layerHeight) {
+		if (!(layerHeight > 0)) {
+			throw new IllegalArgumentException("The layer height must be positive, got " + layerHeight);
+		}
+		Faces faces = faces(incoming, basePlane, 0);
+		int n = faces.size();
+		if (n == 0) {
+			return new ArrayList<>();
+		}
+		long first = (long) Math.floor(faces.minZ / layerHeight);
+		long last = Math.max(first, (long) Math.ceil(faces.maxZ / layerHeight) - 1);
+		if (last - first >= Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many layers of height " + layerHeight);
+		}
+		int layers = (int) (last - first + 1);
+		double[] heights = new double[layers];
+		for (int i = 0; i < layers; i++) {
+			double bottom = Math.max((first + i) * layerHeight, faces.minZ);
+			double top = Math.min((first + i + 1) * layerHeight, faces.maxZ);
+			heights[i] = (bottom + top) / 2;
+		}
+		Integer[] boxed = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			boxed[i] = i;
+		}
+		Arrays.sort(boxed, (a, b) -> Double.compare(faces.polygonMinZ[a], faces.polygonMinZ[b]));
+		int[] byMinZ = new int[n];
+		for (int i = 0; i < n; i++) {
+			byMinZ[i] = boxed[i];
+		}
+
+		@SuppressWarnings("unchecked")
+		List<Polygon>[] sections = new List[layers];
+		// every run of layers starts its own sweep
+		int runs = Math.min(layers, Runtime.getRuntime().availableProcessors() * 4);
+		IntStream.range(0, runs).parallel().forEach(run -> {
+			IntList active = new IntList();
+			int next = 0;
+			for (int i = (int) ((long) layers * run / runs); i < (long) layers * (run + 1) / runs; i++) {
+				double height = heights[i];
+				while (next < n && faces.polygonMinZ[byMinZ[next]] <= height) {
+					active.add(byMinZ[next++]);
+				}
+				int kept = 0;
+				for (int a = 0; a < active.size(); a++) {
+					int p = active.get(a);
+					if (faces.polygonMaxZ[p] > height) {
+						active.set(kept++, p);
+					}
+				}
+				active.truncate(kept);
+				sections[i] = faces.section(height, active, (first + i) * layerHeight);
+			}
+		});
+		return new ArrayList<>(Arrays.asList(sections));
+	}
+
+	/**
+	 * Gets the polygons of a CSG in the frame of a slice plane.
+	 */
+	static Faces faces(CSG incoming, Transform slicePlane, double normalInsetDistance) {
+		Transform frame = slicePlane.inverse();
+		if (Math.abs(normalInsetDistance) >= 0.001) {
+			// the offset needs the solid, only then transform the whole CSG
+			return new Faces(incoming.transformed(frame).toolOffset(normalInsetDistance).getPolygons(), null);
+		}
+		return new Faces(incoming.getPolygons(), frame);
+	}
+
+	/**
+	 * The vertex positions of polygons in the slice plane frame, with the z
+	 * range of every polygon.
+	 */
+	static final class Faces {
+		final double[] coords;
+		/** Index of the first vertex of every polygon, and the vertex count. */
+		final int[] starts;
+		final double[] polygonMinZ;
+		final double[] polygonMaxZ;
+		final double minZ;
+		final double maxZ;
+
+		Faces(List<Polygon> polygons, Transform frame) {
+			int count = polygons.size();
+			starts = new int[count + 1];
+			int n = 0;
+			for (int i = 0; i < count; i++) {
+				starts[i] = n;
+				n += polygons.get(i).vertices.size();
+			}
+			starts[count] = n;
+			coords = new double[n * 3];
+			double[] weights = new double[n];
+			int k = 0;
+			for (Polygon p : polygons) {
+				for (Vertex v : p.vertices) {
+					coords[k * 3] = v.pos.x;
+					coords[k * 3 + 1] = v.pos.y;
+					coords[k * 3 + 2] = v.pos.z;
+					weights[k++] = v.getWeight();
+				}
+			}
+			if (frame != null) {
+				frame.transform(coords, weights, n);
+			}
+			polygonMinZ = new double[count];
+			polygonMaxZ = new double[count];
+			double low = Double.POSITIVE_INFINITY;
+			double high = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int v = starts[i]; v < starts[i + 1]; v++) {
+					double z = coords[v * 3 + 2];
+					min = Math.min(min, z);
+					max = Math.max(max, z);
+				}
+				polygonMinZ[i] = min;
+				polygonMaxZ[i] = max;
+				low = Math.min(low, min);
+				high = Math.max(high, max);
+			}
+			minZ = low;
+			maxZ = high;
+		}
+
+		int size() {
+			return polygonMinZ.length;
+		}
+
+		/**
+		 * Computes the section just above a height.
+		 *
+		 * @param height     the height
+		 * @param candidates the polygons that may cross the height
+		 * @param z          the z coordinate of the returned polygons
+		 * @return the outlines and holes of the section
+		 */
+		List<Polygon> section(double height, IntList candidates, double z) {
+			VertexIndex points = new VertexIndex(Plane.EPSILON_Point, 64);
+			IntList segments = new IntList();
+			IntList crossings = new IntList();
+			for (int c = 0; c < candidates.size(); c++) {
+				int p = candidates.get(c);
+				// a vertex at the height counts as below it
+				if (polygonMinZ[p] > height || polygonMaxZ[p] <= height) {
+					continue;
+				}
+				crossings.clear();
+				int first = -1;
+				int from = starts[p];
+				int n = starts[p + 1] - from;
+				for (int i = 0; i < n; i++) {
+					int a = from + i;
+					int b = from + (i + 1) % n;
+					boolean aboveA = coords[a * 3 + 2] > height;
+					boolean aboveB = coords[b * 3 + 2] > height;
+					if (aboveA == aboveB) {
+						continue;
+					}
+					if (aboveA && first < 0) {
+						first = crossings.size();
+					}
+					// interpolate from the lower end, so both polygons sharing the
+					// edge find the same point
+					crossings.add(aboveA ? cross(b, a, height, points) : cross(a, b, height, points));
+				}
+				// the boundary leaves the plane downwards, then comes back up; the
+				// section runs from where it goes down to where it comes up
+				int m = crossings.size();
+				for (int i = 0; i + 1 < m; i += 2) {
+					int start = crossings.get((first + i) % m);
+					int end = crossings.get((first + i + 1) % m);
+					if (start != end) {
+						segments.add(start);
+						segments.add(end);
+					}
+				}
+			}
+			return classify(loops(segments, points), z);
+		}
+
+		private int cross(int low, int high, double height, VertexIndex points) {
+			double zl = coords[low * 3 + 2];
+			double t = (height - zl) / (coords[high * 3 + 2] - zl);
+			double x = coords[low * 3] + (coords[high * 3] - coords[low * 3]) * t;
+			double y = coords[low * 3 + 1] + (coords[high * 3 + 1] - coords[low * 3 + 1]) * t;
+			return points.weld(x, y, 0);
+		}
+	}
+
+	/**
+	 * Chains segments into loops, open chains of a mesh with gaps are closed.
+	 */
+	static List<double[]> loops(IntList segments, VertexIndex points) {
+		int count = segments.size() / 2;
+		int[] head = new int[points.size()];
+		Arrays.fill(head, -1);
+		int[] nextOut = new int[count];
+		for (int s = count - 1; s >= 0; s--) {
+			int start = segments.get(s * 2);
+			nextOut[s] = head[start];
+			head[start] = s;
+		}
+		boolean[] used = new boolean[count];
+		List<double[]> loops = new ArrayList<>();
+		IntList loop = new IntList();
+		for (int s = 0; s < count; s++) {
+			if (used[s]) {
+				continue;
+			}
+			loop.clear();
+			int start = segments.get(s * 2);
+			int current = s;
+			while (current >= 0) {
+				used[current] = true;
+				loop.add(segments.get(current * 2));
+				int end = segments.get(current * 2 + 1);
+				if (end == start) {
+					break;
+				}
+				int next = head[end];
+				while (next >= 0 && used[next]) {
+					next = nextOut[next];
+				}
+				current = next;
+			}
+			double[] xy = simplify(loop, points);
+			if (xy != null) {
+				loops.add(xy);
+			}
+		}
+		return loops;
+	}
+
+	/**
+	 * Drops the points on the line through their neighbours.
+	 *
+	 * @return x, y of the remaining points, null if less than 3 remain
+	 */
+	private static double[] simplify(IntList loop, VertexIndex points) {
+		int n = loop.size();
+		double[] xy = new double[n * 2];
+		for (int i = 0; i < n; i++) {
+			xy[i * 2] = points.get(loop.get(i), 0);
+			xy[i * 2 + 1] = points.get(loop.get(i), 1);
+		}
+		boolean removed = true;
+		while (removed && n >= 3) {
+			removed = false;
+			int kept = 0;
+			for (int i = 0; i < n; i++) {
+				int prev = kept > 0 ? kept - 1 : n - 1;
+				double px = xy[prev * 2];
+				double py = xy[prev * 2 + 1];
+				double x = xy[i * 2];
+				double y = xy[i * 2 + 1];
+				int next = (i + 1) % n;
+				double dx = xy[next * 2] - px;
+				double dy = xy[next * 2 + 1] - py;
+				double length = Math.sqrt(dx * dx + dy * dy);
+				double offLine = Math.abs(dx * (y - py) - dy * (x - px));
+				if (offLine <= Plane.EPSILON_Point * Math.max(length, 1)) {
+					removed = true;
+					continue;
+				}
+				xy[kept * 2] = x;
+				xy[kept * 2 + 1] = y;
+				kept++;
+			}
+			n = kept;
+		}
+		return n < 3 ? null : Arrays.copyOf(xy, n * 2);
+	}
+
+	/**
+	 * Orients the loops by their nesting depth and orders every outline before
+	 * its holes.
+	 */
+	static List<Polygon> classify(List<double[]> loops, double z) {
+		int n = loops.size();
+		double[] area = new double[n];
+		double[][] bounds = new double[n][];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			double[] xy = loops.get(i);
+			area[i] = signedArea(xy);
+			bounds[i] = bounds(xy);
+			order[i] = i;
+		}
+		// a loop can only be inside a larger one
+		Arrays.sort(order, (a, b) -> Double.compare(Math.abs(area[b]), Math.abs(area[a])));
+		int[] parent = new int[n];
+		int[] depth = new int[n];
+		for (int i = 0; i < n; i++) {
+			int loop = order[i];
+			parent[loop] = -1;
+			double[] xy = loops.get(loop);
+			for (int j = i - 1; j >= 0; j--) {
+				int outer = order[j];
+				double[] b = bounds[outer];
+				if (xy[0] >= b[0] && xy[0] <= b[2] && xy[1] >= b[1] && xy[1] <= b[3]
+						&& contains(loops.get(outer), xy[0], xy[1])) {
+					parent[loop] = outer;
+					depth[loop] = depth[outer] + 1;
+					break;
+				}
+			}
+		}
+		List<Polygon> polygons = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			int outline = order[i];
+			if (depth[outline] % 2 != 0) {
+				continue;
+			}
+			polygons.add(toPolygon(loops.get(outline), area[outline] < 0, z));
+			for (int j = i + 1; j < n; j++) {
+				int hole = order[j];
+				if (parent[hole] == outline) {
+					polygons.add(toPolygon(loops.get(hole), area[hole] > 0, z));
+				}
+			}
+		}
+		return polygons;
+	}
+
+	private static Polygon toPolygon(double[] xy, boolean reverse, double z) {
+		int n = xy.length / 2;
+		List<Vector3d> points = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			int k = reverse ? n - 1 - i : i;
+			points.add(new Vector3d(xy[k * 2], xy[k * 2 + 1], z));
+		}
+		return Polygon.fromPoints(points);
+	}
+
+	private static double signedArea(double[] xy) {
+		int n = xy.length / 2;
+		double sum = 0;
+		for (int i = 0, j = n - 1; i < n; j = i++) {
+			sum += xy[j * 2] * xy[i * 2 + 1] - xy[i * 2] * xy[j * 2 + 1];
+		}
+		return sum / 2;
+	}
+
+	private static double[] bounds(double[] xy) {
+		double[] b = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Double.NEGATIVE_INFINITY };
+		for (int i = 0; i < xy.length; i += 2) {
+			b[0] = Math.min(b[0], xy[i]);
+			b[1] = Math.min(b[1], xy[i + 1]);
+			b[2] = Math.max(b[2], xy[i]);
+			b[3] = Math.max(b[3], xy[i + 1]);
+		}
+		return b;
+	}
+
+	private static boolean contains(double[] xy, double x, double y) {
+		int n = xy.length / 2;
+		boolean inside = false;
+		for (int i = 0, j = n - 1; i < n; j = i++) {
+			double yi = xy[i * 2 + 1];
+			double yj = xy[j * 2 + 1];
+			if ((yi > y) != (yj > y)) {
+				double xi = xy[i * 2];
+				double xj = xy[j * 2];
+				if (x < xi + (y - yi) * (xj - xi) / (yj - yi)) {
+					inside = !inside;
+				}
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * A growable list of ints.
+	 */
+	static final class IntList {
+		private int[] values = new int[16];
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int get(int index) {
+			return values[index];
+		}
+
+		void set(int index, int value) {
+			values[index] = value;
+		}
+
+		void truncate(int size) {
+			this.size = size;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+}
@@ -33,8 +33,11 @@
  */
 package eu.mihosoft.vrl.v3d;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -67,6 +70,27 @@ final class Node {
 	
 	private long maxDepth = -1;
 
+	/** Polygon classifications used by the splitting plane heuristic. */
+	private static final int COPLANAR = 0;
+	private static final int FRONT = 1;
+	private static final int BACK = 2;
+	private static final int SPANNING = 3;
+
+	/** Below this many polygons the first polygon is always used as splitter. */
+	private static final int MIN_POLYGONS_FOR_HEURISTIC = 16;
+	/** Number of candidate planes scored by the balanced heuristic. */
+	private static final int SPLIT_CANDIDATES = 24;
+	/** Number of polygons each candidate plane is tested against. */
+	private static final int SPLIT_SAMPLES = 256;
+	/** Cost of one split relative to one polygon of front/back imbalance. */
+	private static final long SPLIT_WEIGHT = 8;
+
+	/**
+	 * Minimum number of polygons on each side of a split before the two halves are
+	 * clipped as separate fork/join tasks.
+	 */
+	private static final int PARALLEL_THRESHOLD = 256;
+
 	/**
 	 * Constructor.
 	 *
@@ -95,38 +119,77 @@ final class Node {
 	 */
 	@Override
 	public Node clone() {
-		Node node = new Node();
-		node.plane = this.plane == null ? null : this.plane.clone();
-		node.front = this.front == null ? null : this.front.clone();
-		node.back = this.back == null ? null : this.back.clone();
-//        node.polygons = new ArrayList<>();
-//        polygons.parallelStream().forEach((Polygon p) -> {
-//            node.polygons.add(p.clone());
-//        });
+		Node root = new Node();
+		ArrayDeque<Node> sources = new ArrayDeque<>();
+		ArrayDeque<Node> targets = new ArrayDeque<>();
+		sources.push(this);
+		targets.push(root);
+		while (!sources.isEmpty()) {
+			Node source = sources.pop();
+			Node node = targets.pop();
+			node.plane = source.plane == null ? null : source.plane.clone();
+			node.polygons = clonePolygons(source.polygons);
+			if (source.front != null) {
+				node.front = new Node();
+				sources.push(source.front);
+				targets.push(node.front);
+			}
+			if (source.back != null) {
+				node.back = new Node();
+				sources.push(source.back);
+				targets.push(node.back);
+			}
+		}
+		return root;
+	}
 
+	/**
+	 * Deep copies the polygons of a single node.
+	 *
+	 * @param polygons the polygons to copy
+	 * @return the copied polygons
+	 */
+	private static List<Polygon> clonePolygons(List<Polygon> polygons) {
 		Stream<Polygon> polygonStream;
 
-        if (polygons.size() > 200) {
-            polygonStream = polygons.parallelStream();
-        } else 
-		polygonStream = polygons.stream();
-
-		node.polygons = polygonStream.map(p -> p.clone()).collect(Collectors.toList());
+		if (polygons.size() > 200) {
+			polygonStream = polygons.parallelStream();
+		} else
+			polygonStream = polygons.stream();
 
-		return node;
+		return polygonStream.map(p -> p.clone()).collect(Collectors.toList());
 	}
 
 	/**
 	 * Converts solid space to empty space and vice verca.
 	 */
 	public void invert() {
+		ArrayDeque<Node> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			node.invertNode();
+			if (node.front != null) {
+				stack.push(node.front);
+			}
+			if (node.back != null) {
+				stack.push(node.back);
+			}
+		}
+	}
+
+	/**
+	 * Inverts the polygons and the plane of this node only and swaps its front
+	 * and back subtrees.
+	 */
+	private void invertNode() {
 
 		Stream<Polygon> polygonStream;
 
-        if (polygons.size() > 200) {
-            polygonStream = polygons.parallelStream();
-        } else 
-		polygonStream = polygons.stream();
+		if (polygons.size() > 200) {
+			polygonStream = polygons.parallelStream();
+		} else
+			polygonStream = polygons.stream();
 
 		polygonStream.forEach((polygon) -> {
 			polygon.flip();
@@ -143,20 +206,14 @@ final class Node {
 
 		this.plane.flip();
 
-		if (this.front != null) {
-			this.front.invert();
-		}
-		if (this.back != null) {
-			this.back.invert();
-		}
 		Node temp = this.front;
 		this.front = this.back;
 		this.back = temp;
 	}
 
 	/**
-	 * Recursively removes all polygons in the {@link polygons} list that are
-	 * contained within this BSP tree.
+	 * Removes all polygons in the {@link polygons} list that are contained within
+	 * this BSP tree.
 	 *
 	 * Note: polygons are splitted if necessary.
 	 *
@@ -165,28 +222,75 @@ final class Node {
 	 * @return the cliped list of polygons
 	 */
 	private List<Polygon> clipPolygons(List<Polygon> polygons) {
+		return clipPolygons(polygons, false);
+	}
+
+	/**
+	 * Removes all polygons in the {@link polygons} list that are contained within
+	 * this BSP tree. If {@code parallel} is set, front and back subtrees that both
+	 * receive enough polygons are clipped concurrently on the fork/join pool.
+	 *
+	 * Note: polygons are splitted if necessary.
+	 *
+	 * @param polygons the polygons to clip
+	 * @param parallel whether to fork independent subtrees
+	 *
+	 * @return the cliped list of polygons
+	 */
+	private List<Polygon> clipPolygons(List<Polygon> polygons, boolean parallel) {
 
 		if (this.plane == null) {
 			return new ArrayList<>(polygons);
 		}
 
-		List<Polygon> frontP = new ArrayList<>();
-		List<Polygon> backP = new ArrayList<>();
+		List<Polygon> result = new ArrayList<>(polygons.size());
+		ArrayDeque<Node> nodes = new ArrayDeque<>();
+		ArrayDeque<List<Polygon>> work = new ArrayDeque<>();
+		nodes.push(this);
+		work.push(polygons);
+
+		// depth first, front before back, so the result keeps the order of the
+		// recursive formulation
+		while (!nodes.isEmpty()) {
+			Node node = nodes.pop();
+			List<Polygon> toClip = work.pop();
+
+			if (node.plane == null) {
+				result.addAll(toClip);
+				continue;
+			}
 
-		for (Polygon polygon : polygons) {
-			this.plane.splitPolygon(polygon, frontP, backP, frontP, backP);
-		}
-		if (this.front != null) {
-			frontP = this.front.clipPolygons(frontP);
-		}
-		if (this.back != null) {
-			backP = this.back.clipPolygons(backP);
-		} else {
-			backP = new ArrayList<>(0);
-		}
+			List<Polygon> frontP = new ArrayList<>();
+			List<Polygon> backP = new ArrayList<>();
 
-		frontP.addAll(backP);
-		return frontP;
+			for (Polygon polygon : toClip) {
+				node.plane.splitPolygon(polygon, frontP, backP, frontP, backP);
+			}
+			if (parallel && node.front != null && node.back != null && frontP.size() >= PARALLEL_THRESHOLD
+					&& backP.size() >= PARALLEL_THRESHOLD) {
+				// everything before this subtree is already in the result and
+				// everything still on the stack comes after it, so joining here
+				// keeps the order
+				ForkJoinTask<List<Polygon>> frontTask = new ClipTask(node.front, frontP).fork();
+				List<Polygon> backResult = node.back.clipPolygons(backP, true);
+				result.addAll(frontTask.join());
+				result.addAll(backResult);
+				continue;
+			}
+			if (node.back != null && !backP.isEmpty()) {
+				nodes.push(node.back);
+				work.push(backP);
+			}
+			if (node.front != null) {
+				if (!frontP.isEmpty()) {
+					nodes.push(node.front);
+					work.push(frontP);
+				}
+			} else {
+				result.addAll(frontP);
+			}
+		}
+		return result;
 	}
 
 	// Remove all polygons in this BSP tree that are inside the other BSP tree
@@ -200,39 +304,117 @@ final class Node {
 	 * @param bsp bsp that shall be used for clipping
 	 */
 	public void clipTo(Node bsp) {
-		this.polygons = bsp.clipPolygons(this.polygons);
-		if (this.front != null) {
-			this.front.clipTo(bsp);
+		clipTo(bsp, false);
+	}
+
+	/**
+	 * Removes all polygons in this BSP tree that are inside the specified BSP tree
+	 * ({@code bsp}). If {@code parallel} is set, the nodes of this tree are clipped
+	 * concurrently and large polygon lists fork their front and back subtrees.
+	 *
+	 * Note: polygons are splitted if necessary.
+	 *
+	 * @param bsp      bsp that shall be used for clipping
+	 * @param parallel whether to use the fork/join pool
+	 */
+	public void clipTo(Node bsp, boolean parallel) {
+		if (parallel) {
+			List<Node> nodes = allNodes();
+			int count = 0;
+			for (Node node : nodes) {
+				count += node.polygons.size();
+			}
+			if (count >= PARALLEL_THRESHOLD) {
+				nodes.parallelStream().forEach(node -> node.polygons = bsp.clipPolygons(node.polygons, true));
+				return;
+			}
 		}
-		if (this.back != null) {
-			this.back.clipTo(bsp);
+		ArrayDeque<Node> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			node.polygons = bsp.clipPolygons(node.polygons);
+			if (node.front != null) {
+				stack.push(node.front);
+			}
+			if (node.back != null) {
+				stack.push(node.back);
+			}
 		}
 	}
 
+	/**
+	 * Returns all nodes of this BSP tree in pre-order.
+	 *
+	 * @return all nodes of this BSP tree
+	 */
+	private List<Node> allNodes() {
+		List<Node> nodes = new ArrayList<>();
+		ArrayDeque<Node> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			nodes.add(node);
+			if (node.back != null) {
+				stack.push(node.back);
+			}
+			if (node.front != null) {
+				stack.push(node.front);
+			}
+		}
+		return nodes;
+	}
+
 	/**
 	 * Returns a list of all polygons in this BSP tree.
 	 *
 	 * @return a list of all polygons in this BSP tree
 	 */
 	public List<Polygon> allPolygons() {
-		List<Polygon> localPolygons = new ArrayList<>(this.polygons);
-		if (this.front != null) {
-			localPolygons.addAll(this.front.allPolygons());
-//            polygons = Utils.concat(polygons, this.front.allPolygons());
+		List<Node> nodes = allNodes();
+		int count = 0;
+		for (Node node : nodes) {
+			count += node.polygons.size();
 		}
-		if (this.back != null) {
-//            polygons = Utils.concat(polygons, this.back.allPolygons());
-			localPolygons.addAll(this.back.allPolygons());
+		List<Polygon> localPolygons = new ArrayList<>(count);
+		for (Node node : nodes) {
+			localPolygons.addAll(node.polygons);
 		}
-
 		return localPolygons;
 	}
 
+	/**
+	 * Returns the number of nodes on the longest path from this node to a leaf.
+	 *
+	 * @return the depth of this BSP tree, 1 for a single node
+	 */
+	int depth() {
+		int max = 0;
+		ArrayDeque<Node> stack = new ArrayDeque<>();
+		ArrayDeque<Integer> levels = new ArrayDeque<>();
+		stack.push(this);
+		levels.push(1);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			int level = levels.pop();
+			max = Math.max(max, level);
+			if (node.front != null) {
+				stack.push(node.front);
+				levels.push(level + 1);
+			}
+			if (node.back != null) {
+				stack.push(node.back);
+				levels.push(level + 1);
+			}
+		}
+		return max;
+	}
+
 	/**
 	 * Build a BSP tree out of {@code polygons}. When called on an existing tree,
 	 * the new polygons are filtered down to the bottom of the tree and become new
-	 * nodes there. Each set of polygons is partitioned using the first polygon (no
-	 * heuristic is used to pick a good split).
+	 * nodes there. Each set of polygons is partitioned using the plane chosen by
+	 * {@link CSG#getDefaultSplitPlaneType()}.
 	 *
 	 * @param polygons polygons used to build the BSP
 	 */
@@ -243,50 +425,159 @@ final class Node {
 	/**
 	 * Build a BSP tree out of {@code polygons}. When called on an existing tree,
 	 * the new polygons are filtered down to the bottom of the tree and become new
-	 * nodes there. Each set of polygons is partitioned using the first polygon (no
-	 * heuristic is used to pick a good split).
+	 * nodes there. Each set of polygons is partitioned using the plane chosen by
+	 * {@link CSG#getDefaultSplitPlaneType()}.
+	 * <p>
+	 * The tree is built with an explicit work stack, so the depth of the tree is
+	 * not limited by the thread stack size.
 	 *
 	 * @param polygons polygons used to build the BSP
 	 */
 	public final void build(List<Polygon> polygons, long depth, long maxDepth) {
-//		if (depth > maxDepth) {
-//			throw new RuntimeException("Impossible Node depth " + depth + " with " + polygons.size() + " remaining max = "+maxDepth );
-//		}
-//		if (depth > 200) {
-//			com.neuronrobotics.sdk.common.Log.error("Node depth " + depth + " with " + polygons.size() + " remaining ");
-//			Plane.setUseDebugger(true);
-//		} else {
-//			Plane.setUseDebugger(false);
-//		}
-
 		if (polygons.isEmpty()) {
 
 			return;
 		}
 
-		if (this.plane == null) {
-			this.plane = polygons.get(0).plane.clone();
-		}
-		//this.polygons.add(polygons.get(0));
+		ArrayDeque<Node> nodes = new ArrayDeque<>();
+		ArrayDeque<List<Polygon>> work = new ArrayDeque<>();
+		nodes.push(this);
+		work.push(polygons);
+
+		while (!nodes.isEmpty()) {
+			Node node = nodes.pop();
+			List<Polygon> toBuild = work.pop();
+
+			if (node.plane == null) {
+				node.plane = selectSplitPlane(toBuild).clone();
+			}
 
-		List<Polygon> frontP = new ArrayList<>();
-		List<Polygon> backP = new ArrayList<>();
+			List<Polygon> frontP = new ArrayList<>();
+			List<Polygon> backP = new ArrayList<>();
 
-		// parellel version does not work here
-		for(int i=0;i<polygons.size();i++) {
-			this.plane.splitPolygon(polygons.get(i), this.polygons, this.polygons, frontP, backP);
+			// parellel version does not work here
+			for (int i = 0; i < toBuild.size(); i++) {
+				node.plane.splitPolygon(toBuild.get(i), node.polygons, node.polygons, frontP, backP);
+			}
+			if (frontP.size() > 0) {
+				if (node.front == null) {
+					node.front = new Node();
+				}
+				nodes.push(node.front);
+				work.push(frontP);
+			}
+			if (backP.size() > 0) {
+				if (node.back == null) {
+					node.back = new Node();
+				}
+				nodes.push(node.back);
+				work.push(backP);
+			}
+		}
+	}
+
+	/**
+	 * Picks the plane used to partition {@code polygons}. With
+	 * {@link CSG.SplitPlaneType#FIRST_POLYGON} (or for small lists) this is the
+	 * plane of the first polygon. With {@link CSG.SplitPlaneType#BALANCED} a
+	 * number of evenly spaced candidate planes are scored against a sample of the
+	 * polygons and the one that causes the fewest splits while keeping front and
+	 * back balanced is returned. The search stops early at a candidate that
+	 * splits nothing and whose imbalance is below the cost of a single split.
+	 *
+	 * @param polygons polygons to partition, must not be empty
+	 * @return the plane to split along
+	 */
+	private static Plane selectSplitPlane(List<Polygon> polygons) {
+		int size = polygons.size();
+		if (CSG.getDefaultSplitPlaneType() != CSG.SplitPlaneType.BALANCED || size <= MIN_POLYGONS_FOR_HEURISTIC) {
+			return polygons.get(0).plane;
 		}
-		if (frontP.size() > 0) {
-			if (this.front == null) {
-				this.front = new Node();
+
+		int candidateStep = Math.max(1, size / SPLIT_CANDIDATES);
+		int sampleStep = Math.max(1, size / SPLIT_SAMPLES);
+
+		Plane best = polygons.get(0).plane;
+		long bestScore = Long.MAX_VALUE;
+		for (int c = 0; c < size; c += candidateStep) {
+			Plane candidate = polygons.get(c).plane;
+			long front = 0;
+			long back = 0;
+			long spanning = 0;
+			for (int i = 0; i < size; i += sampleStep) {
+				switch (classify(candidate, polygons.get(i))) {
+				case FRONT:
+					front++;
+					break;
+				case BACK:
+					back++;
+					break;
+				case SPANNING:
+					spanning++;
+					break;
+				default:
+					break;
+				}
+			}
+			long imbalance = Math.abs(front - back);
+			long score = spanning * SPLIT_WEIGHT + imbalance;
+			if (score < bestScore) {
+				bestScore = score;
+				best = candidate;
+			}
+			if (spanning == 0 && imbalance < SPLIT_WEIGHT) {
+				// no candidate that splits anything can score better than this one
+				return candidate;
 			}
-			this.front.build(frontP, depth + 1,maxDepth);
 		}
-		if (backP.size() > 0) {
-			if (this.back == null) {
-				this.back = new Node();
+		return best;
+	}
+
+	/**
+	 * Classifies a polygon against a plane without splitting it.
+	 *
+	 * @param plane   the candidate splitting plane
+	 * @param polygon the polygon to classify
+	 * @return one of {@link #COPLANAR}, {@link #FRONT}, {@link #BACK} or
+	 *         {@link #SPANNING}
+	 */
+	private static int classify(Plane plane, Polygon polygon) {
+		Vector3d normal = plane.getNormal();
+		double dist = plane.getDist();
+		double epsilon = Plane.getEPSILON();
+		int type = COPLANAR;
+		for (int i = 0; i < polygon.vertices.size(); i++) {
+			Vector3d pos = polygon.vertices.get(i).pos;
+			double t = normal.x * pos.x + normal.y * pos.y + normal.z * pos.z - dist;
+			if (t < -epsilon) {
+				type |= BACK;
+			} else if (t > epsilon) {
+				type |= FRONT;
+			}
+			if (type == SPANNING) {
+				break;
 			}
-			this.back.build(backP, depth + 1,maxDepth);
+		}
+		return type;
+	}
+
+	/**
+	 * Clips a list of polygons against a subtree on the fork/join pool.
+	 */
+	private static final class ClipTask extends RecursiveTask<List<Polygon>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Node node;
+		private final List<Polygon> polygons;
+
+		ClipTask(Node node, List<Polygon> polygons) {
+			this.node = node;
+			this.polygons = polygons;
+		}
+
+		@Override
+		protected List<Polygon> compute() {
+			return node.clipPolygons(polygons, true);
 		}
 	}
 }
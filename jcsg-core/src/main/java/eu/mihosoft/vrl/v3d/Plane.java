@@ -89,6 +89,17 @@ public class Plane {
 		this.setDist(dist);
 	}
 
+	/**
+	 * Copy constructor. The normal is shared, planes replace their normal
+	 * instead of modifying it.
+	 *
+	 * @param source the plane to copy
+	 */
+	private Plane(Plane source) {
+		this.normal = source.normal;
+		this.dist = source.dist;
+	}
+
 	/**
 	 * Creates a plane defined by the the specified points.
 	 *
@@ -298,7 +309,7 @@ public class Plane {
 	 */
 	@Override
 	public Plane clone() {
-		return new Plane(getNormal().clone(), getDist());
+		return new Plane(this);
 	}
 
 	/**
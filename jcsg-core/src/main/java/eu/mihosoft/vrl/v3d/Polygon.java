@@ -140,6 +140,26 @@ public final class Polygon {
     public Polygon(List<Vertex> vertices) {
     	this(vertices,new PropertyStorage(),true);
     }
+    /**
+     * Constructor. Creates a new polygon that consists of the specified
+     * vertices and lies in the specified plane. Unlike the other constructors
+     * this one does not fit a plane to the vertices, use it when the plane is
+     * already known.
+     *
+     *  Note:  the vertices used to initialize a polygon must be coplanar
+     * and form a convex loop.
+     *
+     * @param vertices polygon vertices
+     * @param shared shared property
+     * @param plane the plane of the vertices
+     */
+    public Polygon(List<Vertex> vertices, PropertyStorage shared, Plane plane) {
+        this.vertices = pruneDuplicatePoints(vertices);
+        this.shared = shared;
+        this.plane = plane;
+
+        validateAndInit(true);
+    }
     public static ArrayList<Vertex> pruneDuplicatePoints(List<Vertex> incoming) {
     	//return incoming;
 		ArrayList<Vertex> newPoints = new ArrayList<Vertex>();
@@ -211,11 +231,12 @@ public final class Polygon {
      */
     @Override
     public Polygon clone() {
-        List<Vertex> newVertices = new ArrayList<>();
-        this.vertices.forEach((vertex) -> {
+        // the vertices share their vectors and the plane is copied, not fitted again
+        List<Vertex> newVertices = new ArrayList<>(vertices.size());
+        for (Vertex vertex : vertices) {
             newVertices.add(vertex.clone());
-        });
-        return new Polygon(newVertices, getStorage(),true).setColor(color);
+        }
+        return new Polygon(newVertices, getStorage(), plane.clone()).setColor(color);
     }
 
     /**
@@ -224,12 +245,18 @@ public final class Polygon {
      * @return this polygon
      */
     public Polygon flip() {
-        vertices.forEach((vertex) -> {
-            vertex.flip();
-        });
-        Collections.reverse(vertices);
-
+        Vector3d normal = plane.getNormal();
         plane.flip();
+        // vertices using the plane normal share the flipped one
+        Vector3d flipped = plane.getNormal();
+        for (Vertex vertex : vertices) {
+            if (vertex.normal == normal) {
+                vertex.normal = flipped;
+            } else {
+                vertex.flip();
+            }
+        }
+        Collections.reverse(vertices);
 
         return this;
     }
@@ -296,11 +323,8 @@ public final class Polygon {
             vertex.pos = vertex.pos.plus(v);
         });
 
-        Vector3d a = this.vertices.get(0).pos;
-        Vector3d b = this.vertices.get(1).pos;
-        Vector3d c = this.vertices.get(2).pos;
-
-        this.plane.setNormal(b.minus(a).cross(c.minus(a)));
+        // a translation keeps the normal
+        this.plane.setDist(this.plane.getDist() + this.plane.getNormal().dot(v));
 
         return this;
     }
@@ -0,0 +1,287 @@
+/*
+ * PolygonIndex.java
+ */
+package eu.mihosoft.vrl.v3d;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Bounding volume hierarchy over the polygons of a {@link CSG}.
+ * <p>
+ * The axis aligned bounds of every polygon are stored in one flat
+ * {@code double} array, so overlap queries neither allocate {@link Bounds}
+ * objects nor touch the vertices again. The hierarchy is built once, by median
+ * splits along the longest axis, and answers which polygons overlap a box in
+ * O(log n + k). Overlap is inclusive, matching
+ * {@link Bounds#intersects(Bounds)}.
+ * <p>
+ * An index is immutable. It describes the polygon list it was built from and
+ * has to be rebuilt when that list changes, see {@link #isIndexOf(List)}.
+ */
+final class PolygonIndex {
+
+	/** Maximum number of polygons in a leaf. */
+	private static final int LEAF_SIZE = 8;
+
+	private final List<Polygon> polygons;
+	private final int size;
+
+	/** min x, y, z followed by max x, y, z for every polygon. */
+	private final double[] boxes;
+	/** Polygon indices, grouped so that every node covers a contiguous range. */
+	private final int[] order;
+
+	/** min x, y, z followed by max x, y, z for every node. */
+	private final double[] nodeBoxes;
+	private final int[] nodeStart;
+	private final int[] nodeEnd;
+	/** Index of the first child, the second child follows it; -1 for leaves. */
+	private final int[] nodeChild;
+
+	/**
+	 * Builds the index for the specified polygons.
+	 *
+	 * @param polygons the polygons to index
+	 */
+	PolygonIndex(List<Polygon> polygons) {
+		this.polygons = polygons;
+		this.size = polygons.size();
+		this.boxes = new double[size * 6];
+		this.order = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+			double minX = Double.POSITIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double minZ = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			double maxZ = Double.NEGATIVE_INFINITY;
+			Polygon p = polygons.get(i);
+			if (p != null) {
+				for (int j = 0; j < p.vertices.size(); j++) {
+					Vector3d pos = p.vertices.get(j).pos;
+					minX = Math.min(minX, pos.x);
+					minY = Math.min(minY, pos.y);
+					minZ = Math.min(minZ, pos.z);
+					maxX = Math.max(maxX, pos.x);
+					maxY = Math.max(maxY, pos.y);
+					maxZ = Math.max(maxZ, pos.z);
+				}
+			}
+			int b = i * 6;
+			boxes[b] = minX;
+			boxes[b + 1] = minY;
+			boxes[b + 2] = minZ;
+			boxes[b + 3] = maxX;
+			boxes[b + 4] = maxY;
+			boxes[b + 5] = maxZ;
+		}
+
+		int maxNodes = 4 * ((size + LEAF_SIZE - 1) / LEAF_SIZE) + 1;
+		nodeBoxes = new double[maxNodes * 6];
+		nodeStart = new int[maxNodes];
+		nodeEnd = new int[maxNodes];
+		nodeChild = new int[maxNodes];
+		build();
+	}
+
+	private void build() {
+		int nodeCount = 1;
+		nodeStart[0] = 0;
+		nodeEnd[0] = size;
+		ArrayDeque<Integer> stack = new ArrayDeque<>();
+		stack.push(0);
+		while (!stack.isEmpty()) {
+			int node = stack.pop();
+			int start = nodeStart[node];
+			int end = nodeEnd[node];
+
+			int nb = node * 6;
+			for (int k = 0; k < 3; k++) {
+				nodeBoxes[nb + k] = Double.POSITIVE_INFINITY;
+				nodeBoxes[nb + 3 + k] = Double.NEGATIVE_INFINITY;
+			}
+			for (int i = start; i < end; i++) {
+				int b = order[i] * 6;
+				for (int k = 0; k < 3; k++) {
+					nodeBoxes[nb + k] = Math.min(nodeBoxes[nb + k], boxes[b + k]);
+					nodeBoxes[nb + 3 + k] = Math.max(nodeBoxes[nb + 3 + k], boxes[b + 3 + k]);
+				}
+			}
+
+			if (end - start <= LEAF_SIZE) {
+				nodeChild[node] = -1;
+				continue;
+			}
+
+			int axis = 0;
+			double extent = nodeBoxes[nb + 3] - nodeBoxes[nb];
+			for (int k = 1; k < 3; k++) {
+				double e = nodeBoxes[nb + 3 + k] - nodeBoxes[nb + k];
+				if (e > extent) {
+					extent = e;
+					axis = k;
+				}
+			}
+			int mid = (start + end) >>> 1;
+			select(start, end - 1, mid, axis);
+
+			int left = nodeCount;
+			nodeCount += 2;
+			nodeChild[node] = left;
+			nodeStart[left] = start;
+			nodeEnd[left] = mid;
+			nodeStart[left + 1] = mid;
+			nodeEnd[left + 1] = end;
+			stack.push(left);
+			stack.push(left + 1);
+		}
+	}
+
+	private double center(int polygon, int axis) {
+		int b = polygon * 6;
+		return boxes[b + axis] + boxes[b + 3 + axis];
+	}
+
+	/**
+	 * Partially sorts {@code order[lo..hi]} so that the element at {@code k} has
+	 * the median center along {@code axis}.
+	 */
+	private void select(int lo, int hi, int k, int axis) {
+		while (hi > lo) {
+			double pivot = center(order[(lo + hi) >>> 1], axis);
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (center(order[i], axis) < pivot) {
+					i++;
+				}
+				while (center(order[j], axis) > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = order[i];
+					order[i] = order[j];
+					order[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether this index was built from the specified polygon list and the
+	 * list still has the same length.
+	 *
+	 * @param polygons the polygon list
+	 * @return true if the index can be used for the list
+	 */
+	boolean isIndexOf(List<Polygon> polygons) {
+		return this.polygons == polygons && polygons.size() == size;
+	}
+
+	/**
+	 * Gets the number of indexed polygons.
+	 *
+	 * @return the number of polygons
+	 */
+	int size() {
+		return size;
+	}
+
+	private static boolean overlaps(double[] a, int ai, Bounds b) {
+		Vector3d min = b.getMin();
+		Vector3d max = b.getMax();
+		return a[ai] <= max.x && a[ai + 3] >= min.x && a[ai + 1] <= max.y && a[ai + 4] >= min.y
+				&& a[ai + 2] <= max.z && a[ai + 5] >= min.z;
+	}
+
+	/**
+	 * Checks whether the bounds of any polygon overlap the specified bounds.
+	 *
+	 * @param bounds the bounds to test
+	 * @return true if at least one polygon overlaps
+	 */
+	boolean intersectsAny(Bounds bounds) {
+		return query(bounds, null);
+	}
+
+	/**
+	 * Marks the polygons whose bounds overlap the specified bounds.
+	 *
+	 * @param bounds the bounds to test
+	 * @return one flag per polygon, in the order of the indexed list
+	 */
+	boolean[] overlapping(Bounds bounds) {
+		boolean[] hits = new boolean[size];
+		query(bounds, hits);
+		return hits;
+	}
+
+	/**
+	 * Splits the indexed polygons into those whose bounds overlap the specified
+	 * bounds and all others. Both lists keep the order of the indexed list.
+	 *
+	 * @param bounds the bounds to test
+	 * @param inner  receives the overlapping polygons
+	 * @param outer  receives all other polygons
+	 */
+	void partition(Bounds bounds, List<Polygon> inner, List<Polygon> outer) {
+		boolean[] hits = overlapping(bounds);
+		for (int i = 0; i < size; i++) {
+			(hits[i] ? inner : outer).add(polygons.get(i));
+		}
+	}
+
+	/**
+	 * Walks the hierarchy. Marks hits in {@code hits}, or returns on the first hit
+	 * if {@code hits} is null.
+	 */
+	private boolean query(Bounds bounds, boolean[] hits) {
+		if (size == 0) {
+			return false;
+		}
+		boolean found = false;
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (!overlaps(nodeBoxes, node * 6, bounds)) {
+				continue;
+			}
+			int child = nodeChild[node];
+			if (child < 0) {
+				for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+					int p = order[i];
+					if (overlaps(boxes, p * 6, bounds)) {
+						if (hits == null) {
+							return true;
+						}
+						hits[p] = true;
+						found = true;
+					}
+				}
+				continue;
+			}
+			if (top + 2 > stack.length) {
+				int[] grown = new int[stack.length * 2];
+				System.arraycopy(stack, 0, grown, 0, top);
+				stack = grown;
+			}
+			stack[top++] = child;
+			stack[top++] = child + 1;
+		}
+		return found;
+	}
+}
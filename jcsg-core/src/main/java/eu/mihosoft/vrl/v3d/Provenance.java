@@ -0,0 +1,206 @@
+/*
+ * Provenance.java
+ */
+package eu.mihosoft.vrl.v3d;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Finds the script lines a CSG is created from.
+ * <p>
+ * A script line is a stack frame whose file is not a {@code .java} file, like
+ * the line of a Groovy script calling the CSG API. Lines are returned as
+ * {@code file:line} strings, equal lines share one instance. The first frame
+ * is found with the {@code StackWalker} of Java 9 and later, which stops at
+ * the first script frame instead of capturing the whole stack; on Java 8 the
+ * stack of a {@link Throwable} is searched. Only the innermost
+ * {@value #MAX_DEPTH} frames are searched for the first frame, the script
+ * line creating a CSG is close to the constructor.
+ */
+final class Provenance {
+
+	/** Bound of the caches, scripts that are loaded again and again get new names. */
+	private static final int MAX_CACHED = 100_000;
+
+	/** Frames searched for the first script line. */
+	private static final int MAX_DEPTH = 64;
+
+	/** Shared instance of every line seen. */
+	private static final ConcurrentHashMap<String, String> lines = new ConcurrentHashMap<>();
+	/** The line of a stack trace element, "" for Java frames. */
+	private static final ConcurrentHashMap<StackTraceElement, String> elements = new ConcurrentHashMap<>();
+	/** Classes compiled from .java files, their frames are skipped by name. */
+	private static final ConcurrentHashMap<String, Boolean> javaClasses = new ConcurrentHashMap<>();
+
+	private static final AtomicLong captures = new AtomicLong();
+	private static final AtomicLong nanos = new AtomicLong();
+
+	private static final Object walker;
+	private static final Method walk;
+	private static final MethodHandle frameFileName;
+	private static final MethodHandle frameLineNumber;
+	private static final MethodHandle frameClassName;
+	private static final Function<Stream<Object>, String> firstScriptLine = frames -> frames
+			.limit(MAX_DEPTH).map(Provenance::scriptLine).filter(Objects::nonNull).findFirst().orElse(null);
+
+	static {
+		Object w = null;
+		Method wk = null;
+		MethodHandle fileName = null;
+		MethodHandle lineNumber = null;
+		MethodHandle className = null;
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+			Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+			w = walkerClass.getMethod("getInstance").invoke(null);
+			wk = walkerClass.getMethod("walk", Function.class);
+			MethodType string = MethodType.methodType(String.class, Object.class);
+			fileName = lookup.findVirtual(frameClass, "getFileName", MethodType.methodType(String.class))
+					.asType(string);
+			className = lookup.findVirtual(frameClass, "getClassName", MethodType.methodType(String.class))
+					.asType(string);
+			lineNumber = lookup.findVirtual(frameClass, "getLineNumber", MethodType.methodType(int.class))
+					.asType(MethodType.methodType(int.class, Object.class));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Java 8, search the stack of a throwable
+			w = null;
+		}
+		walker = w;
+		walk = wk;
+		frameFileName = fileName;
+		frameLineNumber = lineNumber;
+		frameClassName = className;
+	}
+
+	private Provenance() {
+		throw new AssertionError("Don't instantiate me!", null);
+	}
+
+	/**
+	 * Adds the script lines of the current stack to a CSG.
+	 *
+	 * @param level  how many lines to add
+	 * @param target the CSG
+	 */
+	static void capture(CSG.ProvenanceLevel level, CSG target) {
+		if (level == CSG.ProvenanceLevel.OFF) {
+			return;
+		}
+		long start = System.nanoTime();
+		if (level == CSG.ProvenanceLevel.FULL) {
+			for (StackTraceElement element : new Exception().getStackTrace()) {
+				String line = line(element);
+				if (line != null) {
+					target.addCreationEventString(line);
+				}
+			}
+		} else {
+			String line = firstLine();
+			if (line != null) {
+				target.addCreationEventString(line);
+			}
+		}
+		captures.incrementAndGet();
+		nanos.addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * Gets the script line of a stack trace element.
+	 *
+	 * @param element the element
+	 * @return the line, or null for Java frames and frames without a line
+	 */
+	static String line(StackTraceElement element) {
+		String line = elements.get(element);
+		if (line == null) {
+			line = scriptLine(element.getFileName(), element.getLineNumber());
+			if (elements.size() > MAX_CACHED) {
+				elements.clear();
+			}
+			elements.putIfAbsent(element, line == null ? "" : line);
+		}
+		return line == null || line.isEmpty() ? null : line;
+	}
+
+	private static String firstLine() {
+		if (walker != null) {
+			try {
+				return (String) walk.invoke(walker, firstScriptLine);
+			} catch (ReflectiveOperationException e) {
+				// fall through to the throwable
+			}
+		}
+		StackTraceElement[] trace = new Exception().getStackTrace();
+		for (int i = 0; i < trace.length && i < MAX_DEPTH; i++) {
+			String line = line(trace[i]);
+			if (line != null) {
+				return line;
+			}
+		}
+		return null;
+	}
+
+	private static String scriptLine(Object frame) {
+		try {
+			// the class name is cheap, the file name builds a stack trace element
+			String className = (String) frameClassName.invokeExact(frame);
+			if (javaClasses.containsKey(className)) {
+				return null;
+			}
+			String fileName = (String) frameFileName.invokeExact(frame);
+			if (fileName != null && fileName.endsWith(".java")) {
+				if (javaClasses.size() > MAX_CACHED) {
+					javaClasses.clear();
+				}
+				javaClasses.put(className, Boolean.TRUE);
+				return null;
+			}
+			return scriptLine(fileName, (int) frameLineNumber.invokeExact(frame));
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	private static String scriptLine(String fileName, int lineNumber) {
+		if (fileName == null || fileName.endsWith(".java") || lineNumber <= 0) {
+			return null;
+		}
+		return intern(fileName + ":" + lineNumber);
+	}
+
+	/**
+	 * Gets the shared instance of a line.
+	 *
+	 * @param line the line
+	 * @return the shared instance
+	 */
+	static String intern(String line) {
+		if (lines.size() > MAX_CACHED) {
+			lines.clear();
+		}
+		String shared = lines.putIfAbsent(line, line);
+		return shared != null ? shared : line;
+	}
+
+	static long getCaptureCount() {
+		return captures.get();
+	}
+
+	static long getCaptureNanos() {
+		return nanos.get();
+	}
+
+	static void resetCounters() {
+		captures.set(0);
+		nanos.set(0);
+	}
+}
@@ -84,19 +84,19 @@ public class STL {
 		STLLoader loader = new STLLoader();
 
 		List<Polygon> polygons = new ArrayList<>();
-		List<Vector3d> vertices = new ArrayList<>();
-		for (Vector3d p : loader.parse(path.toFile())) {
-			vertices.add(p);
-			if (vertices.size() == 3) {
-				try {
-					polygons.add(Polygon.fromPointsAllowDegenerate(vertices));
-				} catch (RuntimeException ex) {
-					//ex.printStackTrace();
-					System.err.println("Pruning polygon loading STL::file");
-				}
-				vertices = new ArrayList<>();
+		loader.parse(path.toFile(), (normal, a, b, c) -> {
+			List<Vertex> vertices = new ArrayList<>(3);
+			// the polygon computes its own plane and vertex normals
+			vertices.add(new Vertex(a, normal));
+			vertices.add(new Vertex(b, normal));
+			vertices.add(new Vertex(c, normal));
+			try {
+				polygons.add(new Polygon(vertices, new PropertyStorage(), true));
+			} catch (RuntimeException ex) {
+				//ex.printStackTrace();
+				System.err.println("Pruning polygon loading STL::file");
 			}
-		}
+		});
 
 		return CSG.fromPolygons(new PropertyStorage(), polygons);
 	}
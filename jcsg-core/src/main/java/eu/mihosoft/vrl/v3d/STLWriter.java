@@ -0,0 +1,285 @@
+/*
+ * STLWriter.java
+ */
+package eu.mihosoft.vrl.v3d;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes a CSG as binary or ASCII STL.
+ * <p>
+ * Both formats are streamed through one reused direct buffer, so the size of
+ * an export is not limited by the heap. The ASCII writer writes the same lines
+ * as {@link CSG#toStlString()}. Coordinates are rounded to
+ * {@link Vector3d#getEXPORTEPSILON()} and printed with the precision of
+ * {@link Vector3d#getExportString()}; for the usual {@code "%.<n>f"} pattern
+ * and power of ten epsilons the digits are written directly instead of
+ * through {@link String#format(String, Object...)}. The direct digits are the
+ * exact multiple of the epsilon, so beyond the digits of the epsilon they can
+ * differ from the formatted double; both parse back to the same coordinate
+ * within the rounding error of a double.
+ */
+public class STLWriter {
+
+	/** Size of the output buffer, large enough for any ASCII facet. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Size of a binary triangle record. */
+	private static final int RECORD_SIZE = 50;
+
+	private static final byte[] HEADER = "solid v3d.csg\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FOOTER = "endsolid v3d.csg\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FACET = "  facet normal ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] OUTER_LOOP = "\n    outer loop\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] VERTEX = "      vertex ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] END_FACET = "    endloop\n  endfacet\n".getBytes(StandardCharsets.US_ASCII);
+
+	/** Must not start with "solid", readers would take the file for ASCII. */
+	private static final byte[] BINARY_HEADER = "binary STL v3d.csg".getBytes(StandardCharsets.US_ASCII);
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private STLWriter() {
+		throw new AssertionError("Don't instantiate me!", null);
+	}
+
+	/**
+	 * Writes the specified CSG as ASCII STL. The CSG is triangulated first.
+	 *
+	 * @param csg the csg to write
+	 * @param out the output stream, not closed by this method
+	 * @throws IOException if writing failed
+	 */
+	public static void writeAscii(CSG csg, OutputStream out) throws IOException {
+		writeAscii(csg, Channels.newChannel(out));
+	}
+
+	/**
+	 * Writes the specified CSG as ASCII STL. The CSG is triangulated first.
+	 *
+	 * @param csg     the csg to write
+	 * @param channel the channel, not closed by this method
+	 * @throws IOException if writing failed
+	 */
+	public static void writeAscii(CSG csg, WritableByteChannel channel) throws IOException {
+		csg.triangulate(false);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		NumberWriter numbers = new NumberWriter();
+		buffer.put(HEADER);
+		for (Polygon p : csg.getPolygons()) {
+			if (!isExportable(p)) {
+				System.out.println("Prune Polygon on export");
+				continue;
+			}
+			// a facet is far smaller than the buffer
+			if (buffer.remaining() < BUFFER_SIZE / 2) {
+				drain(buffer, channel);
+			}
+			buffer.put(FACET);
+			numbers.write(buffer, p.plane.getNormal());
+			buffer.put(OUTER_LOOP);
+			for (int i = 0; i < 3; i++) {
+				buffer.put(VERTEX);
+				numbers.write(buffer, p.vertices.get(i).pos);
+				buffer.put((byte) '\n');
+			}
+			buffer.put(END_FACET);
+		}
+		buffer.put(FOOTER);
+		drain(buffer, channel);
+	}
+
+	/**
+	 * Writes the specified CSG as binary STL. The CSG is triangulated first.
+	 *
+	 * @param csg the csg to write
+	 * @param out the output stream, not closed by this method
+	 * @throws IOException if writing failed
+	 */
+	public static void writeBinary(CSG csg, OutputStream out) throws IOException {
+		writeBinary(csg, Channels.newChannel(out));
+	}
+
+	/**
+	 * Writes the specified CSG as binary STL. The CSG is triangulated first.
+	 *
+	 * @param csg     the csg to write
+	 * @param channel the channel, not closed by this method
+	 * @throws IOException if writing failed
+	 */
+	public static void writeBinary(CSG csg, WritableByteChannel channel) throws IOException {
+		csg.triangulate(false);
+		List<Polygon> polygons = csg.getPolygons();
+		// the triangle count precedes the triangles
+		boolean[] exportable = new boolean[polygons.size()];
+		int count = 0;
+		for (int i = 0; i < exportable.length; i++) {
+			exportable[i] = isExportable(polygons.get(i));
+			if (exportable[i]) {
+				count++;
+			} else {
+				System.out.println("Prune Polygon on export");
+			}
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(BINARY_HEADER);
+		// through Buffer, the ByteBuffer overloads do not exist before Java 9
+		((Buffer) buffer).position(80);
+		buffer.putInt(count);
+		for (int i = 0; i < exportable.length; i++) {
+			if (!exportable[i]) {
+				continue;
+			}
+			if (buffer.remaining() < RECORD_SIZE) {
+				drain(buffer, channel);
+			}
+			Polygon p = polygons.get(i);
+			putFloats(buffer, p.plane.getNormal());
+			for (int k = 0; k < 3; k++) {
+				putFloats(buffer, p.vertices.get(k).pos);
+			}
+			// attribute byte count
+			buffer.putShort((short) 0);
+		}
+		drain(buffer, channel);
+	}
+
+	private static void putFloats(ByteBuffer buffer, Vector3d v) {
+		buffer.putFloat((float) v.x);
+		buffer.putFloat((float) v.y);
+		buffer.putFloat((float) v.z);
+	}
+
+	private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		((Buffer) buffer).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+
+	/**
+	 * Checks whether a polygon can be written as STL facet: it has to be a
+	 * triangle for which {@link Plane#computeNormal(List)} finds a normal. This
+	 * is the same test without normalizing every partial sum.
+	 *
+	 * @param p the polygon
+	 * @return true if the polygon can be exported
+	 */
+	static boolean isExportable(Polygon p) {
+		List<Vertex> vertices = p.vertices;
+		if (vertices.size() != 3) {
+			return false;
+		}
+		double x = 0;
+		double y = 0;
+		double z = 0;
+		for (int i = 0; i < 3; i++) {
+			Vector3d current = vertices.get(i).pos;
+			Vector3d next = vertices.get((i + 1) % 3).pos;
+			x += (current.y - next.y) * (current.z + next.z);
+			y += (current.z - next.z) * (current.x + next.x);
+			z += (current.x - next.x) * (current.y + next.y);
+			double length = Math.sqrt(x * x + y * y + z * z);
+			if (length > 0 && Double.isFinite(x / length) && Double.isFinite(y / length)
+					&& Double.isFinite(z / length)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Formats coordinates like {@link Vector3d#toStlString()}, up to the digits
+	 * beyond the epsilon.
+	 */
+	private static final class NumberWriter {
+		private final double epsilon = Vector3d.getEXPORTEPSILON();
+		private final String pattern = Vector3d.getExportString();
+		/** Number of decimals of the epsilon, -1 if it is no power of ten. */
+		private final int scale;
+		/** Number of decimals of the pattern, -1 if it is no "%.<n>f" pattern. */
+		private final int precision;
+		private final byte[] digits = new byte[20];
+
+		NumberWriter() {
+			int s = -1;
+			for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+				if (Math.abs(epsilon * POWERS_OF_TEN[i] - 1.0) < 1.0e-9) {
+					s = i;
+					break;
+				}
+			}
+			scale = s;
+			int p = -1;
+			if (pattern.length() > 3 && pattern.startsWith("%.") && pattern.endsWith("f")) {
+				try {
+					p = Integer.parseInt(pattern.substring(2, pattern.length() - 1));
+				} catch (NumberFormatException ex) {
+					p = -1;
+				}
+			}
+			precision = p;
+		}
+
+		void write(ByteBuffer buffer, Vector3d v) {
+			write(buffer, v.x);
+			buffer.put((byte) ' ');
+			write(buffer, v.y);
+			buffer.put((byte) ' ');
+			write(buffer, v.z);
+		}
+
+		/**
+		 * Writes {@code round(value / epsilon) * epsilon}, the value the formatter
+		 * of {@link Vector3d} is given, from its integer number of epsilons.
+		 */
+		void write(ByteBuffer buffer, double value) {
+			double units = Math.rint(value / epsilon);
+			if (scale < 0 || precision < scale || precision > 64 || Math.abs(units) >= 1e17
+					|| Double.isNaN(units)) {
+				double rounded = ((double) Math.round(value / epsilon)) * epsilon;
+				buffer.put(String.format(pattern, rounded).getBytes(StandardCharsets.US_ASCII));
+				return;
+			}
+			long k = Math.round(value / epsilon);
+			if (k < 0) {
+				buffer.put((byte) '-');
+				k = -k;
+			}
+			long integer = k / POWERS_OF_TEN[scale];
+			long fraction = k % POWERS_OF_TEN[scale];
+			int n = 0;
+			do {
+				digits[n++] = (byte) ('0' + integer % 10);
+				integer /= 10;
+			} while (integer > 0);
+			while (n > 0) {
+				buffer.put(digits[--n]);
+			}
+			buffer.put((byte) '.');
+			for (int i = scale - 1; i >= 0; i--) {
+				buffer.put((byte) ('0' + (fraction / POWERS_OF_TEN[i]) % 10));
+			}
+			for (int i = scale; i < precision; i++) {
+				buffer.put((byte) '0');
+			}
+		}
+	}
+}
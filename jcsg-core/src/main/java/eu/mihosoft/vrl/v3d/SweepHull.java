@@ -0,0 +1,192 @@
+/*
+ * SweepHull.java
+ */
+package eu.mihosoft.vrl.v3d;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import eu.mihosoft.vrl.v3d.ext.quickhull3d.HullUtil;
+
+/**
+ * Sweeps profiles along a list of stations by hulling consecutive stations.
+ * <p>
+ * Only the vertex positions of a profile are transformed to a station, no CSG
+ * is cloned or transformed. The hulls of the consecutive pairs are independent
+ * and built in parallel. The segments are the same as hulling the transformed
+ * profiles one after the other, like {@link Extrude#hull(CSG, ArrayList)}
+ * does.
+ */
+public class SweepHull {
+
+	private SweepHull() {
+		throw new AssertionError("Don't instantiate me!", null);
+	}
+
+	/**
+	 * Hulls the profile at every pair of consecutive stations.
+	 *
+	 * @param profile  the profile
+	 * @param stations the transform of each station
+	 * @return one segment less than there are stations
+	 */
+	public static ArrayList<CSG> segments(CSG profile, List<Transform> stations) {
+		return segments(Collections.nCopies(stations.size(), profile), stations);
+	}
+
+	/**
+	 * Hulls every pair of consecutive stations, each station with its own
+	 * profile. Extra profiles or stations are ignored.
+	 *
+	 * @param profiles the profile of each station
+	 * @param stations the transform of each station
+	 * @return one segment less than there are stations
+	 */
+	public static ArrayList<CSG> segments(List<CSG> profiles, List<Transform> stations) {
+		List<Transform[]> chains = new ArrayList<>(stations.size());
+		for (Transform t : stations) {
+			chains.add(new Transform[] { t });
+		}
+		return segmentsOfChains(profiles, chains);
+	}
+
+	/**
+	 * Hulls the profile at every pair of consecutive stations and collects the
+	 * polygons of all segments in one CSG. The segments are not unioned, their
+	 * shared caps stay inside the result.
+	 *
+	 * @param profile  the profile
+	 * @param stations the transform of each station
+	 * @return the polygons of all segments
+	 */
+	public static CSG concatenated(CSG profile, List<Transform> stations) {
+		List<Polygon> polygons = new ArrayList<>();
+		for (CSG segment : segments(profile, stations)) {
+			polygons.addAll(segment.getPolygons());
+		}
+		return CSG.fromPolygons(polygons);
+	}
+
+	/**
+	 * Hulls every pair of consecutive stations; the transforms of a station are
+	 * composed and applied like consecutive calls of
+	 * {@link CSG#transformed(Transform)}.
+	 */
+	static ArrayList<CSG> segmentsOfChains(List<CSG> profiles, List<Transform[]> chains) {
+		int count = Math.min(profiles.size(), chains.size());
+		if (count < 2) {
+			return new ArrayList<>();
+		}
+		// most sweeps use one profile for every station
+		List<Profile> unique = new ArrayList<>();
+		Profile[] byStation = new Profile[count];
+		for (int i = 0; i < count; i++) {
+			CSG csg = profiles.get(i);
+			Profile last = unique.isEmpty() ? null : unique.get(unique.size() - 1);
+			if (last == null || last.csg != csg) {
+				last = new Profile(csg);
+				unique.add(last);
+			}
+			byStation[i] = last;
+		}
+		double[][] points = new double[count][];
+		IntStream.range(0, count).parallel()
+				.forEach(i -> points[i] = byStation[i].transformed(chains.get(i)));
+
+		return IntStream.range(0, count - 1).parallel().mapToObj(i -> {
+			double[] pair = new double[points[i].length + points[i + 1].length];
+			System.arraycopy(points[i], 0, pair, 0, points[i].length);
+			System.arraycopy(points[i + 1], 0, pair, points[i].length, points[i + 1].length);
+			return HullUtil.hull(pair, pair.length / 3, new PropertyStorage());
+		}).collect(Collectors.toCollection(ArrayList::new));
+	}
+
+	/**
+	 * Vertex positions of a profile, in the order of its polygons.
+	 */
+	private static final class Profile {
+		private final CSG csg;
+		/** The transform still pending on the polygons of the csg, or null. */
+		private final Transform pending;
+		private final double[] coords;
+		private final double[] weights;
+		private final boolean weighted;
+		/** Index of the first vertex of every polygon, and the vertex count. */
+		private final int[] starts;
+
+		Profile(CSG csg) {
+			this.csg = csg;
+			Transform source;
+			List<Polygon> polygons;
+			synchronized (csg) {
+				source = csg.getPendingTransform();
+				polygons = csg.getSourcePolygons();
+			}
+			if (source == null) {
+				polygons = csg.getPolygons();
+			}
+			pending = source;
+			starts = new int[polygons.size() + 1];
+			int n = 0;
+			for (int i = 0; i < polygons.size(); i++) {
+				starts[i] = n;
+				n += polygons.get(i).vertices.size();
+			}
+			starts[polygons.size()] = n;
+			coords = new double[n * 3];
+			weights = new double[n];
+			int k = 0;
+			boolean anyWeighted = false;
+			for (Polygon p : polygons) {
+				for (Vertex v : p.vertices) {
+					coords[k * 3] = v.pos.x;
+					coords[k * 3 + 1] = v.pos.y;
+					coords[k * 3 + 2] = v.pos.z;
+					weights[k] = v.getWeight();
+					anyWeighted |= weights[k++] != 1.0;
+				}
+			}
+			weighted = anyWeighted;
+		}
+
+		double[] transformed(Transform[] chain) {
+			int n = weights.length;
+			double[] result = coords.clone();
+			boolean mirrored = false;
+			if (weighted) {
+				for (Transform t : chain) {
+					t.transform(result, weights, n);
+					mirrored ^= t.isMirror();
+				}
+			} else {
+				// composed in the order CSG.transformed composes them
+				Transform composed = pending;
+				for (Transform t : chain) {
+					composed = composed == null ? new Transform().apply(t)
+							: new Transform().apply(t).apply(composed);
+				}
+				if (composed != null) {
+					composed.transform(result, weights, n);
+					mirrored = composed.isMirror();
+				}
+			}
+			if (mirrored) {
+				// a mirrored polygon reverses its vertices, keep the hull input in
+				// the same order as the transformed CSG
+				for (int p = 0; p + 1 < starts.length; p++) {
+					for (int a = starts[p], b = starts[p + 1] - 1; a < b; a++, b--) {
+						for (int axis = 0; axis < 3; axis++) {
+							double tmp = result[a * 3 + axis];
+							result[a * 3 + axis] = result[b * 3 + axis];
+							result[b * 3 + axis] = tmp;
+						}
+					}
+				}
+			}
+			return result;
+		}
+	}
+}
@@ -1,11 +1,16 @@
 package eu.mihosoft.vrl.v3d;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
 import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import java.util.stream.IntStream;
 
@@ -13,27 +18,42 @@ import static com.neuronrobotics.javacad.JavaCadBuildInfo.isMac;
 
 /**
  * The Class Text.
+ * <p>
+ * The extruded glyphs, with their holes already subtracted, are kept in a
+ * least recently used cache keyed by font, depth and glyph. A string is
+ * composed from the cached glyphs, moved to their positions in the string.
  */
 @SuppressWarnings("restriction")
 public class TextExtrude {
     private static final int CURVE_SEGMENTS = 3;
+    private static final FontRenderContext RENDER_CONTEXT;
+    private static int glyphCacheSize = 1024;
+    private static final LinkedHashMap<GlyphKey, List<CSG>> glyphCache = new LinkedHashMap<GlyphKey, List<CSG>>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<GlyphKey, List<CSG>> eldest) {
+            return size() > glyphCacheSize;
+        }
+    };
+
+    static {
+        BufferedImage img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = img.createGraphics();
+        RENDER_CONTEXT = g2.getFontRenderContext();
+        g2.dispose();
+    }
+
     private final double dir;
     private List<CSG> sections = new ArrayList<>();
     private List<CSG> holes = new ArrayList<>();
     private List<Vector3d> points;
 
-    private TextExtrude(String text, Font font, double dir) {
-        if (dir <= 0)
-            throw new NumberFormatException("length can not be negative");
+    private TextExtrude(Shape shape, double dir) {
         this.dir = dir;
         points = new ArrayList<>();
 
-        BufferedImage img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2 = img.createGraphics();
-        GlyphVector glyphVector = font.createGlyphVector(g2.getFontRenderContext(), text);
-        Shape shape = glyphVector.getOutline();
-
-
         double[] coords = new double[8];
         PathIterator pathIterator = shape.getPathIterator(null);
         Vector3d startPoint;
@@ -98,8 +118,99 @@ public class TextExtrude {
      */
     @SuppressWarnings("restriction")
     public static List<CSG> text(double dir, String text, Font font) {
-        TextExtrude te = new TextExtrude(text, font, dir);
-        return te.sections;
+        if (dir <= 0)
+            throw new NumberFormatException("length can not be negative");
+        GlyphVector glyphVector = font.createGlyphVector(RENDER_CONTEXT, text);
+        List<CSG> sections = new ArrayList<>();
+        for (int i = 0; i < glyphVector.getNumGlyphs(); i++) {
+            Point2D position = glyphVector.getGlyphPosition(i);
+            Transform move = Transform.unity().translate(position.getX(), position.getY(), 0);
+            for (CSG section : glyph(dir, font, glyphVector, i)) {
+                sections.add(section.transformed(move));
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Gets the extruded sections of a glyph at the origin, from the cache or
+     * by extruding its outline.
+     */
+    private static List<CSG> glyph(double dir, Font font, GlyphVector glyphVector, int index) {
+        GlyphKey key = new GlyphKey(font, dir, glyphVector.getGlyphCode(index));
+        synchronized (glyphCache) {
+            List<CSG> cached = glyphCache.get(key);
+            if (cached != null)
+                return cached;
+        }
+        Point2D position = glyphVector.getGlyphPosition(index);
+        Shape outline = glyphVector.getGlyphOutline(index, (float) -position.getX(), (float) -position.getY());
+        List<CSG> sections = new TextExtrude(outline, dir).sections;
+        synchronized (glyphCache) {
+            glyphCache.put(key, sections);
+        }
+        return sections;
+    }
+
+    /**
+     * Gets the maximum number of glyphs kept in the cache.
+     *
+     * @return the number of glyphs
+     */
+    public static int getGlyphCacheSize() {
+        synchronized (glyphCache) {
+            return glyphCacheSize;
+        }
+    }
+
+    /**
+     * Sets the maximum number of glyphs kept in the cache, 0 disables the cache.
+     *
+     * @param size the number of glyphs
+     */
+    public static void setGlyphCacheSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("The cache size can not be negative, got " + size);
+        synchronized (glyphCache) {
+            glyphCacheSize = size;
+            while (glyphCache.size() > size) {
+                glyphCache.remove(glyphCache.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * Removes all glyphs from the cache.
+     */
+    public static void clearGlyphCache() {
+        synchronized (glyphCache) {
+            glyphCache.clear();
+        }
+    }
+
+    private static final class GlyphKey {
+        private final Font font;
+        private final double depth;
+        private final int glyph;
+
+        GlyphKey(Font font, double depth, int glyph) {
+            this.font = font;
+            this.depth = depth;
+            this.glyph = glyph;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GlyphKey))
+                return false;
+            GlyphKey other = (GlyphKey) o;
+            return glyph == other.glyph && Double.compare(depth, other.depth) == 0 && font.equals(other.font);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(font, depth, glyph);
+        }
     }
 
     private void expandCubicBezier(double x1, double x2, double x3, double y1, double y2, double y3) {
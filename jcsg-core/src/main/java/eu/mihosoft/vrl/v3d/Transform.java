@@ -516,6 +516,34 @@ public class Transform {
 		return vec;
 	}
 
+	/**
+	 * Applies this transform to an array of points, with the same arithmetic
+	 * as {@link #transform(Vector3d, double)} applies to each of them.
+	 *
+	 * @param coords
+	 *            x, y, and z coordinates of each point, transformed in place
+	 * @param amounts
+	 *            transform amount of each point (0 = 0 %, 1 = 100%)
+	 * @param count
+	 *            the number of points
+	 */
+	public void transform(double[] coords, double[] amounts, int count) {
+		Matrix4d m = getInternalMatrix();
+		for (int i = 0; i < count; i++) {
+			int k = i * 3;
+			double prevX = coords[k];
+			double prevY = coords[k + 1];
+			double prevZ = coords[k + 2];
+			double x = m.m00 * prevX + m.m01 * prevY + m.m02 * prevZ + m.m03;
+			double y = m.m10 * prevX + m.m11 * prevY + m.m12 * prevZ + m.m13;
+			double z = m.m20 * prevX + m.m21 * prevY + m.m22 * prevZ + m.m23;
+			double amount = amounts[i];
+			coords[k] = prevX + (x - prevX) * amount;
+			coords[k + 1] = prevY + (y - prevY) * amount;
+			coords[k + 2] = prevZ + (z - prevZ) * amount;
+		}
+	}
+
 	// // Multiply a CSG.Vector3D (interpreted as 3 column, 1 row) by this matrix
 	// // (result = v*M)
 	// // Fourth element is taken as 1
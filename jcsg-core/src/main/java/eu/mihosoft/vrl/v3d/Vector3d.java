@@ -324,13 +324,34 @@ public class Vector3d extends javax.vecmath.Vector3d{
                 append(roundedValue(z, ep));
     }
 
-    
+    /**
+     * Rounds the components of this vector to the nearest multiple of epsilon.
+     *
+     *  Note:  this vector is modified, vertices share their vectors with
+     * their clones, use {@link #roundedToEpsilon(double)} for vertex positions.
+     *
+     * @param ep the epsilon
+     * @return this vector
+     */
     public Vector3d roundToEpsilon(double ep) {
     	x=roundToEpsilon(x, ep);
     	y=roundToEpsilon(y, ep);
     	z=roundToEpsilon(z,ep);
     	return this;
     }
+
+    /**
+     * Returns a copy of this vector with the components rounded to the
+     * nearest multiple of epsilon.
+     *
+     *  Note:  this vector is not modified.
+     *
+     * @param ep the epsilon
+     * @return a rounded copy of this vector
+     */
+    public Vector3d roundedToEpsilon(double ep) {
+    	return new Vector3d(roundToEpsilon(x, ep), roundToEpsilon(y, ep), roundToEpsilon(z, ep));
+    }
     
     /**
      * Returns this vector in OBJ string format.
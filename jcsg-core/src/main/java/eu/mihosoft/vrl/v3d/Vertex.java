@@ -40,6 +40,10 @@ import java.util.Objects;
  * Represents a vertex of a polygon. This class provides {@link #normal} so
  * primitives like {@link Cube} can return a smooth vertex normal, but
  * {@link #normal} is not used anywhere else.
+ * <p>
+ * Clones share their {@link #pos} and {@link #normal} vectors. Methods of this
+ * class never modify these vectors in place, they assign new ones; code that
+ * changes a vertex should do the same.
  */
 public class Vertex {
 
@@ -86,7 +90,7 @@ public class Vertex {
      */
     @Override
     public Vertex clone() {
-        return new Vertex(pos.clone(), normal.clone(), weight);
+        return new Vertex(pos, normal, weight);
     }
 
     /**
@@ -156,7 +160,7 @@ public class Vertex {
      * @return this vertex
      */
     public Vertex transform(Transform transform) {
-        pos = pos.transform(transform, weight);
+        pos = pos.transformed(transform, weight);
         return this;
     }
 
@@ -0,0 +1,268 @@
+/*
+ * VertexIndex.java
+ */
+package eu.mihosoft.vrl.v3d;
+
+import java.util.Arrays;
+
+/**
+ * Welds vertex positions into a list of distinct points.
+ * <p>
+ * Two positions are the same point if every coordinate differs by at most
+ * the epsilon, which is how {@link Vertex#equals(Object)} compares vertices
+ * with {@link Plane#EPSILON_Point}. Positions are hashed into grid cells of
+ * the size of the epsilon, so a lookup only inspects the 27 cells around a
+ * position instead of every point added so far. Like
+ * {@link java.util.List#indexOf(Object)} on a list of vertices, a lookup
+ * returns the earliest added matching point.
+ */
+public final class VertexIndex {
+
+	/** Largest cell coordinate, far points share the outermost cells. */
+	private static final double CELL_LIMIT = 1L << 60;
+
+	private final double epsilon;
+
+	/** x, y, z of every point. */
+	private double[] points;
+	/** Next point in the same cell, -1 at the end of the chain. */
+	private int[] next;
+	private int size;
+
+	/** Open addressed table: cell coordinates to the last point in the cell. */
+	private long[] cellX;
+	private long[] cellY;
+	private long[] cellZ;
+	private int[] cellHeads;
+	private int cells;
+
+	/**
+	 * Creates an index that welds with {@link Plane#EPSILON_Point}.
+	 *
+	 * @param expected the expected number of points
+	 */
+	public VertexIndex(int expected) {
+		this(Plane.EPSILON_Point, expected);
+	}
+
+	/**
+	 * Creates an index with the specified weld distance.
+	 *
+	 * @param epsilon  the maximum difference per coordinate, must be positive
+	 * @param expected the expected number of points
+	 */
+	public VertexIndex(double epsilon, int expected) {
+		if (!(epsilon > 0)) {
+			throw new IllegalArgumentException("Epsilon must be positive, got " + epsilon);
+		}
+		this.epsilon = epsilon;
+		int capacity = Math.max(16, expected);
+		points = new double[capacity * 3];
+		next = new int[capacity];
+		allocateCells(Integer.highestOneBit(capacity * 2 - 1) << 1);
+	}
+
+	/**
+	 * Gets the number of distinct points.
+	 *
+	 * @return the number of points
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a coordinate of a point.
+	 *
+	 * @param index the point index
+	 * @param axis  0 for x, 1 for y, 2 for z
+	 * @return the coordinate
+	 */
+	public double get(int index, int axis) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return points[index * 3 + axis];
+	}
+
+	/**
+	 * Finds the earliest added point within the epsilon of a position.
+	 *
+	 * @param pos the position
+	 * @return the point index, or -1 if there is none
+	 */
+	public int indexOf(Vector3d pos) {
+		return indexOf(pos.x, pos.y, pos.z);
+	}
+
+	/**
+	 * Finds the earliest added point within the epsilon of a position.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the point index, or -1 if there is none
+	 */
+	public int indexOf(double x, double y, double z) {
+		return find(x, y, z, -1);
+	}
+
+	/**
+	 * Finds the earliest added point whose euclidean distance to a position is
+	 * less than a distance. Such a point is also that close on every axis, so
+	 * the lookup inspects the same cells as {@link #indexOf(Vector3d)}.
+	 *
+	 * @param pos      the position
+	 * @param distance the distance, must be positive and at most the epsilon
+	 * @return the point index, or -1 if there is none
+	 */
+	public int indexOfCloserThan(Vector3d pos, double distance) {
+		if (!(distance > 0 && distance <= epsilon)) {
+			throw new IllegalArgumentException("Distance must be in (0, " + epsilon + "], got " + distance);
+		}
+		return find(pos.x, pos.y, pos.z, distance);
+	}
+
+	/**
+	 * Finds the earliest added point near a position: within the epsilon on
+	 * every axis for a negative distance, otherwise closer than the distance.
+	 */
+	private int find(double x, double y, double z, double distance) {
+		long cx = cell(x);
+		long cy = cell(y);
+		long cz = cell(z);
+		int found = -1;
+		for (long i = cx - 1; i <= cx + 1; i++) {
+			for (long j = cy - 1; j <= cy + 1; j++) {
+				for (long k = cz - 1; k <= cz + 1; k++) {
+					int slot = slot(i, j, k);
+					if (cellHeads[slot] < 0) {
+						continue;
+					}
+					for (int p = cellHeads[slot]; p >= 0; p = next[p]) {
+						// chains are newest first, keep looking for older points
+						if ((found < 0 || p < found)
+								&& (distance < 0 ? near(p, x, y, z) : closer(p, x, y, z, distance))) {
+							found = p;
+						}
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the index of the point within the epsilon of a position, adding
+	 * the position as a new point if there is none.
+	 *
+	 * @param pos the position
+	 * @return the point index
+	 */
+	public int weld(Vector3d pos) {
+		return weld(pos.x, pos.y, pos.z);
+	}
+
+	/**
+	 * Returns the index of the point within the epsilon of a position, adding
+	 * the position as a new point if there is none.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the point index
+	 */
+	public int weld(double x, double y, double z) {
+		int found = indexOf(x, y, z);
+		return found >= 0 ? found : add(x, y, z);
+	}
+
+	/**
+	 * Adds a position as a new point, even if there already is a point within
+	 * the epsilon.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the point index
+	 */
+	public int add(double x, double y, double z) {
+		if (size == next.length) {
+			points = Arrays.copyOf(points, size * 6);
+			next = Arrays.copyOf(next, size * 2);
+		}
+		if (cells * 2 >= cellHeads.length) {
+			rehash();
+		}
+		int p = size++;
+		points[p * 3] = x;
+		points[p * 3 + 1] = y;
+		points[p * 3 + 2] = z;
+		link(p);
+		return p;
+	}
+
+	private void link(int p) {
+		int slot = slot(cell(points[p * 3]), cell(points[p * 3 + 1]), cell(points[p * 3 + 2]));
+		if (cellHeads[slot] < 0) {
+			cells++;
+		}
+		next[p] = cellHeads[slot];
+		cellHeads[slot] = p;
+	}
+
+	private void rehash() {
+		allocateCells(cellHeads.length * 2);
+		for (int p = 0; p < size; p++) {
+			link(p);
+		}
+	}
+
+	private void allocateCells(int capacity) {
+		cellX = new long[capacity];
+		cellY = new long[capacity];
+		cellZ = new long[capacity];
+		cellHeads = new int[capacity];
+		Arrays.fill(cellHeads, -1);
+		cells = 0;
+	}
+
+	private long cell(double value) {
+		// keep room for the neighbour cells of far away points
+		double c = Math.floor(value / epsilon);
+		return (long) Math.max(-CELL_LIMIT, Math.min(CELL_LIMIT, c));
+	}
+
+	/**
+	 * Finds the table slot of a cell; an empty slot if the cell has no points.
+	 */
+	private int slot(long x, long y, long z) {
+		long h = (x * 0x9E3779B97F4A7C15L) ^ (y * 0xC2B2AE3D27D4EB4FL) ^ (z * 0x165667B19E3779F9L);
+		int mask = cellHeads.length - 1;
+		int slot = (int) (h ^ (h >>> 32)) & mask;
+		while (cellHeads[slot] >= 0) {
+			if (cellX[slot] == x && cellY[slot] == y && cellZ[slot] == z) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		cellX[slot] = x;
+		cellY[slot] = y;
+		cellZ[slot] = z;
+		return slot;
+	}
+
+	private boolean closer(int p, double x, double y, double z, double distance) {
+		int i = p * 3;
+		double dx = points[i] - x;
+		double dy = points[i + 1] - y;
+		double dz = points[i + 2] - z;
+		return Math.sqrt(dx * dx + dy * dy + dz * dz) < distance;
+	}
+
+	private boolean near(int p, double x, double y, double z) {
+		int i = p * 3;
+		return Math.abs(points[i] - x) <= epsilon && Math.abs(points[i + 1] - y) <= epsilon
+				&& Math.abs(points[i + 2] - z) <= epsilon;
+	}
+}
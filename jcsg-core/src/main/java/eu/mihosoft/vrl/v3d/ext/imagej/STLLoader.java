@@ -8,69 +8,61 @@ package eu.mihosoft.vrl.v3d.ext.imagej;
  * TODO: license unclear
  */
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.ParseException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
 import eu.mihosoft.vrl.v3d.Vector3d;
 
-;
-
-
 // TODO: Auto-generated Javadoc
 /**
  * The Class STLLoader.
+ * <p>
+ * Binary files are read through a reused little-endian buffer, ASCII files are
+ * tokenized directly from the bytes. Triangles are passed to a
+ * {@link TriangleHandler} as soon as they are read, so callers can build their
+ * polygons without collecting all vertices first.
  */
 public class STLLoader {
 
-//        /**
-//         * Load the specified stl file and returns the result as a hash map, mapping
-//         * the object names to the corresponding <code>CustomMesh</code> objects.
-//         */
-//        public static Map<String, CustomMesh> load(String stlfile)
-//                        throws IOException {
-//                STLLoader sl = new STLLoader();
-//                try {
-//                        sl.parse(stlfile);
-//                } catch (RuntimeException e) {
-//                        ////System.out.println("error reading " + sl.name);
-//                        throw e;
-//                }
-//                return sl.meshes;
-//        }
-//
 	/**
-	 * Instantiates a new STL loader.
+	 * Receives the triangles of an STL file in file order.
 	 */
-//        private HashMap<String, CustomMesh> meshes;
-	public STLLoader() {
-	}
+	public interface TriangleHandler {
 
-	/** The line. */
-	String line;
-
-	/** The in. */
-	BufferedReader in;
+		/**
+		 * Called once per triangle. All vectors are new instances owned by the
+		 * handler.
+		 *
+		 * @param normal the facet normal as stored in the file
+		 * @param a      the first vertex
+		 * @param b      the second vertex
+		 * @param c      the third vertex
+		 */
+		void triangle(Vector3d normal, Vector3d a, Vector3d b, Vector3d c);
+	}
 
-	/** The vertices. */
-	// attributes of the currently read mesh
-	private ArrayList<Vector3d> vertices = new ArrayList<>();
+	/** Size of a binary triangle record. */
+	private static final int RECORD_SIZE = 50;
 
-	/** The normal. */
-	private Vector3d normal = new Vector3d(0.0f, 0.0f, 0.0f); // to be used for file checking
+	/** Size of the read buffer. */
+	private static final int BUFFER_SIZE = RECORD_SIZE * 1024;
 
-	/** The fis. */
-	private FileInputStream fis;
+	/** Exact powers of ten, used for the fast number parsing path. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
 
-	/** The triangles. */
-	private int triangles;
-//    private DecimalFormat decimalFormat = new DecimalFormat("0.0E0");
+	/**
+	 * Instantiates a new STL loader.
+	 */
+	public STLLoader() {
+	}
 
 	/**
 	 * Parses the.
@@ -80,148 +72,292 @@ public class STLLoader {
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public ArrayList<Vector3d> parse(File f) throws IOException {
-		vertices.clear();
-
-		// determine if this is a binary or ASCII STL
-		// and send to the appropriate parsing method
-		// Hypothesis 1: this is an ASCII STL
-		try {
-			BufferedReader br = new BufferedReader(new FileReader(f));
-			String line = br.readLine();
-			String[] words = line.trim().split("\\s+");
-			if (line.indexOf('\0') < 0 && words[0].equalsIgnoreCase("solid")) {
-				////// System.out.println("Looks like an ASCII STL");
-				parseAscii(f);
-				br.close();
-				return vertices;
-			}
-			br.close();
-		} catch (java.lang.NullPointerException ex) {
-			ex.printStackTrace();
-		} // the split cna fail on binary stls
-		// Hypothesis 2: this is a binary STL
-		FileInputStream fs = new FileInputStream(f);
-
-		// bytes 80, 81, 82 and 83 form a little-endian int
-		// that contains the number of triangles
-		byte[] buffer = new byte[84];
-		fs.read(buffer, 0, 84);
-		fs.close();
-		triangles = (int) (((buffer[83] & 0xff) << 24) | ((buffer[82] & 0xff) << 16) | ((buffer[81] & 0xff) << 8)
-				| (buffer[80] & 0xff));
-		if (((f.length() - 84) / 50) == triangles) {
-			////// System.out.println("Looks like a binary STL");
-			parseBinary(f);
-			return vertices;
-		}
-		// System.out.println("File is not a valid STL");
-
+		ArrayList<Vector3d> vertices = new ArrayList<>();
+		parse(f, (normal, a, b, c) -> {
+			vertices.add(a);
+			vertices.add(b);
+			vertices.add(c);
+		});
 		return vertices;
 	}
 
 	/**
-	 * Parses the ascii.
+	 * Parses a binary or ASCII STL file and passes every triangle to the
+	 * specified handler.
 	 *
-	 * @param f the f
+	 * @param f       the file
+	 * @param handler the triangle handler
+	 * @return the number of triangles read
+	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	private void parseAscii(File f) {
-		try {
-			in = new BufferedReader(new FileReader(f));
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-		vertices = new ArrayList<>();
-		try {
-			while ((line = in.readLine()) != null) {
-				String[] numbers = line.trim().split("\\s+");
-				if (numbers[0].equals("vertex")) {
-					double x = parseDouble(numbers[1]);
-					double y = parseDouble(numbers[2]);
-					double z = parseDouble(numbers[3]);
-					Vector3d vertex = new Vector3d(x, y, z);
-					vertices.add(vertex);
-				} else if (numbers[0].equals("facet") && numbers[1].equals("normal")) {
-					normal.x = parseDouble(numbers[2]);
-					normal.y = parseDouble(numbers[3]);
-					normal.z = parseDouble(numbers[4]);
+	public int parse(File f, TriangleHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			long length = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(84).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				// fill the header
+			}
+			// bytes 80, 81, 82 and 83 form a little-endian int
+			// that contains the number of triangles. Binary files may start with
+			// "solid" too, so the size check comes first.
+			if (header.position() == 84) {
+				long triangles = header.getInt(80) & 0xFFFFFFFFL;
+				if ((length - 84) / RECORD_SIZE == triangles) {
+					return parseBinary(channel, (int) triangles, handler);
 				}
 			}
-			in.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (ParseException e) {
-			e.printStackTrace();
+			if (startsWithSolid(header)) {
+				channel.position(0);
+				return parseAscii(channel, handler);
+			}
+			// System.out.println("File is not a valid STL");
+			return 0;
+		}
+	}
+
+	private static boolean startsWithSolid(ByteBuffer header) {
+		int i = 0;
+		int end = header.position();
+		while (i < end && Character.isWhitespace(header.get(i))) {
+			i++;
+		}
+		String solid = "solid";
+		if (end - i < solid.length()) {
+			return false;
+		}
+		for (int k = 0; k < solid.length(); k++) {
+			if (Character.toLowerCase(header.get(i + k)) != solid.charAt(k)) {
+				return false;
+			}
 		}
+		return true;
 	}
 
 	/**
-	 * Parses the binary.
-	 *
-	 * @param f the f
+	 * Parses the binary triangle records following the header.
 	 */
-	private void parseBinary(File f) {
-		vertices = new ArrayList<Vector3d>();
-		try {
-			fis = new FileInputStream(f);
-			for (int h = 0; h < 84; h++) {
-				fis.read();// skip the header bytes
-			}
-			for (int t = 0; t < triangles; t++) {
-				byte[] tri = new byte[50];
-				for (int tb = 0; tb < 50; tb++) {
-					tri[tb] = (byte) fis.read();
-				}
-				normal.x = leBytesToFloat(tri[0], tri[1], tri[2], tri[3]);
-				normal.y = leBytesToFloat(tri[4], tri[5], tri[6], tri[7]);
-				normal.z = leBytesToFloat(tri[8], tri[9], tri[10], tri[11]);
-				for (int i = 0; i < 3; i++) {
-					final int j = i * 12 + 12;
-					double px = leBytesToFloat(tri[j], tri[j + 1], tri[j + 2], tri[j + 3]);
-					double py = leBytesToFloat(tri[j + 4], tri[j + 5], tri[j + 6], tri[j + 7]);
-					double pz = leBytesToFloat(tri[j + 8], tri[j + 9], tri[j + 10], tri[j + 11]);
-					Vector3d p = new Vector3d(px, py, pz);
-					vertices.add(p);
-				}
+	private int parseBinary(FileChannel channel, int triangles, TriangleHandler handler) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		channel.position(84);
+		int read = 0;
+		while (read < triangles) {
+			if (channel.read(buffer) < 0 && buffer.position() < RECORD_SIZE) {
+				break;
 			}
-			fis.close();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+			// through Buffer, ByteBuffer.flip() does not exist before Java 9
+			((Buffer) buffer).flip();
+			while (read < triangles && buffer.remaining() >= RECORD_SIZE) {
+				Vector3d normal = new Vector3d(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+				Vector3d a = new Vector3d(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+				Vector3d b = new Vector3d(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+				Vector3d c = new Vector3d(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+				// attribute byte count
+				buffer.getShort();
+				handler.triangle(normal, a, b, c);
+				read++;
+			}
+			buffer.compact();
 		}
+		return read;
 	}
 
-//    private double parseFloat(String string) throws ParseException {
-//        //E+05 -> E05, e+05 -> E05
-//        string = string.replaceFirst("[eE]\\+", "E");
-//        //E-05 -> E-05, e-05 -> E-05
-//        string = string.replaceFirst("e\\-", "E-");
-//        return decimalFormat.parse(string).doubleValue();
-//    }
+	/**
+	 * Parses an ASCII file. Only the {@code facet normal} and {@code vertex}
+	 * keywords carry data, every three vertices form a triangle.
+	 */
+	private int parseAscii(FileChannel channel, TriangleHandler handler) throws IOException {
+		Tokenizer in = new Tokenizer(channel);
+		Vector3d normal = new Vector3d(0, 0, 0);
+		Vector3d[] corners = new Vector3d[3];
+		int corner = 0;
+		int read = 0;
+		while (in.next()) {
+			if (in.is("vertex")) {
+				corners[corner++] = new Vector3d(in.nextNumber(), in.nextNumber(), in.nextNumber());
+				if (corner == 3) {
+					handler.triangle(normal, corners[0], corners[1], corners[2]);
+					read++;
+					corner = 0;
+				}
+			} else if (in.is("facet")) {
+				corner = 0;
+				normal = new Vector3d(0, 0, 0);
+			} else if (in.is("normal")) {
+				normal = new Vector3d(in.nextNumber(), in.nextNumber(), in.nextNumber());
+			} else if (in.is("solid") || in.is("endsolid")) {
+				// the rest of the line is the name of the solid
+				in.skipLine();
+			}
+		}
+		return read;
+	}
 
 	/**
-	 * Parses the double.
-	 *
-	 * @param string the string
-	 * @return the double
-	 * @throws ParseException the parse exception
+	 * Splits the bytes of an ASCII STL into whitespace separated tokens.
 	 */
-	private double parseDouble(String string) throws ParseException {
+	private static final class Tokenizer {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private final byte[] bytes = buffer.array();
+		private int position;
+		private int limit;
 
-		return Double.parseDouble(string);
+		private byte[] token = new byte[64];
+		private int length;
+		/** The byte that ended the current token, -1 at the end of the file. */
+		private int end;
+
+		Tokenizer(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Reads the next byte, or -1 at the end of the file.
+		 */
+		private int read() throws IOException {
+			if (position == limit) {
+				((Buffer) buffer).clear();
+				int n;
+				do {
+					n = channel.read(buffer);
+				} while (n == 0);
+				if (n < 0) {
+					return -1;
+				}
+				position = 0;
+				limit = n;
+			}
+			return bytes[position++];
+		}
+
+		private static boolean isSpace(int c) {
+			return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B;
+		}
+
+		/**
+		 * Advances to the next token.
+		 *
+		 * @return false at the end of the file
+		 */
+		boolean next() throws IOException {
+			int c;
+			do {
+				c = read();
+			} while (c >= 0 && isSpace(c));
+			length = 0;
+			while (c >= 0 && !isSpace(c)) {
+				if (length == token.length) {
+					byte[] grown = new byte[length * 2];
+					System.arraycopy(token, 0, grown, 0, length);
+					token = grown;
+				}
+				token[length++] = (byte) c;
+				c = read();
+			}
+			end = c;
+			return length > 0;
+		}
+
+		/**
+		 * Skips the rest of the line of the current token.
+		 */
+		void skipLine() throws IOException {
+			if (end == '\n' || end < 0) {
+				// the token ended the line, as a bare "solid" header does
+				return;
+			}
+			int c;
+			do {
+				c = read();
+			} while (c >= 0 && c != '\n');
+		}
+
+		boolean is(String keyword) {
+			if (keyword.length() != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (Character.toLowerCase(token[i]) != keyword.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		double nextNumber() throws IOException {
+			if (!next()) {
+				throw new IOException("Unexpected end of STL file, number expected");
+			}
+			return parseDouble(token, length);
+		}
 	}
 
 	/**
-	 * Le bytes to double.
+	 * Parses a decimal number. Numbers with at most 15 significant digits and a
+	 * decimal exponent within +-22 are computed with a single exact
+	 * multiplication or division, which rounds exactly like
+	 * {@link Double#parseDouble(String)}; everything else is passed on to it.
 	 *
-	 * @param b0 the b0
-	 * @param b1 the b1
-	 * @param b2 the b2
-	 * @param b3 the b3
+	 * @param chars  the characters of the number
+	 * @param length the number of characters
 	 * @return the double
 	 */
-	private double leBytesToFloat(byte b0, byte b1, byte b2, byte b3) {
-		return Float.intBitsToFloat((((b3 & 0xff) << 24) | ((b2 & 0xff) << 16) | ((b1 & 0xff) << 8) | (b0 & 0xff)));
+	static double parseDouble(byte[] chars, int length) {
+		int i = 0;
+		boolean negative = false;
+		if (i < length && (chars[i] == '-' || chars[i] == '+')) {
+			negative = chars[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean any = false;
+		boolean dot = false;
+		for (; i < length; i++) {
+			int c = chars[i];
+			if (c >= '0' && c <= '9') {
+				any = true;
+				if (digits < 16) {
+					mantissa = mantissa * 10 + (c - '0');
+				}
+				if (mantissa != 0) {
+					digits++;
+				}
+				if (dot) {
+					scale--;
+				}
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				break;
+			}
+		}
+		int exponent = 0;
+		if (any && i < length && (chars[i] == 'e' || chars[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < length && (chars[i] == '-' || chars[i] == '+')) {
+				negativeExponent = chars[i] == '-';
+				i++;
+			}
+			int start = i;
+			for (; i < length && chars[i] >= '0' && chars[i] <= '9' && exponent < 10000; i++) {
+				exponent = exponent * 10 + (chars[i] - '0');
+			}
+			if (i == start) {
+				any = false;
+			}
+			if (negativeExponent) {
+				exponent = -exponent;
+			}
+		}
+		int power = scale + exponent;
+		if (any && i == length && digits <= 15 && power >= -22 && power <= 22) {
+			double value = power < 0 ? mantissa / POWERS_OF_TEN[-power] : mantissa * POWERS_OF_TEN[power];
+			return negative ? -value : value;
+		}
+		return Double.parseDouble(new String(chars, 0, length, StandardCharsets.US_ASCII));
 	}
 
 }
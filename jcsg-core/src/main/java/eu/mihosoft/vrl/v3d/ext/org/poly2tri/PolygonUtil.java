@@ -250,6 +250,123 @@ public class PolygonUtil {
 		return result;
 	}
 
+	/**
+	 * Splits a polygon into triangles. Triangles are returned as they are,
+	 * strictly convex polygons are fanned from their first vertex, and only
+	 * concave polygons or polygons with colinear vertices are passed to
+	 * {@link #concaveToConvex(Polygon)}.
+	 * <p>
+	 * The convexity test projects the polygon onto the axis plane its normal
+	 * is closest to, so no transform is needed. The fanned triangles keep the
+	 * vertices and the plane of the polygon.
+	 *
+	 * @param incoming the polygon
+	 * @return the triangles
+	 */
+	public static List<Polygon> triangulate(Polygon incoming) {
+		if (incoming == null || incoming.vertices.size() < 3)
+			return new ArrayList<>();
+		if (incoming.vertices.size() == 3)
+			return Collections.singletonList(incoming);
+		if (!isStrictlyConvex(incoming))
+			return concaveToConvex(incoming);
+
+		List<Vertex> vertices = incoming.vertices;
+		List<Polygon> result = new ArrayList<>(vertices.size() - 2);
+		Vertex apex = vertices.get(0);
+		for (int i = 1; i < vertices.size() - 1; i++) {
+			List<Vertex> triangle = new ArrayList<>(3);
+			triangle.add(apex.clone());
+			triangle.add(vertices.get(i).clone());
+			triangle.add(vertices.get(i + 1).clone());
+			Polygon poly = new Polygon(triangle, incoming.getStorage(), incoming.plane.clone());
+			poly.setColor(incoming.getColor());
+			result.add(poly);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether every corner of a polygon turns the way its normal
+	 * requires, by a margin, and the outline winds around once.
+	 */
+	private static boolean isStrictlyConvex(Polygon polygon) {
+		Vector3d normal = polygon.plane.getNormal();
+		double ax = Math.abs(normal.x);
+		double ay = Math.abs(normal.y);
+		double az = Math.abs(normal.z);
+		// project onto the dominant axis plane, (u, v) keeps the handedness
+		int u, v;
+		double sign;
+		if (az >= ax && az >= ay) {
+			u = 0;
+			v = 1;
+			sign = Math.signum(normal.z);
+		} else if (ax >= ay) {
+			u = 1;
+			v = 2;
+			sign = Math.signum(normal.x);
+		} else {
+			u = 2;
+			v = 0;
+			sign = Math.signum(normal.y);
+		}
+		if (sign == 0)
+			return false;
+
+		List<Vertex> vertices = polygon.vertices;
+		int n = vertices.size();
+		Vector3d prev = vertices.get(n - 1).pos;
+		Vector3d current = vertices.get(0).pos;
+		double prevU = get(current, u) - get(prev, u);
+		double prevV = get(current, v) - get(prev, v);
+		// a simple convex outline changes its direction along an axis twice,
+		// a self intersecting one with the same turns more often
+		double lastU = lastDirection(vertices, u);
+		double lastV = lastDirection(vertices, v);
+		int flips = 0;
+		for (int i = 0; i < n; i++) {
+			Vector3d next = vertices.get((i + 1) % n).pos;
+			double du = get(next, u) - get(current, u);
+			double dv = get(next, v) - get(current, v);
+			double cross = (prevU * dv - prevV * du) * sign;
+			double lengths = Math.sqrt((prevU * prevU + prevV * prevV) * (du * du + dv * dv));
+			if (!(cross > Plane.getEPSILON() * lengths))
+				return false;
+			if (du != 0) {
+				if (du * lastU < 0)
+					flips++;
+				lastU = du;
+			}
+			if (dv != 0) {
+				if (dv * lastV < 0)
+					flips++;
+				lastV = dv;
+			}
+			prevU = du;
+			prevV = dv;
+			current = next;
+		}
+		return flips <= 4;
+	}
+
+	/**
+	 * Gets the last non zero edge direction of an outline along an axis.
+	 */
+	private static double lastDirection(List<Vertex> vertices, int axis) {
+		int n = vertices.size();
+		for (int i = n - 1; i >= 0; i--) {
+			double d = get(vertices.get((i + 1) % n).pos, axis) - get(vertices.get(i).pos, axis);
+			if (d != 0)
+				return d;
+		}
+		return 0;
+	}
+
+	private static double get(Vector3d p, int axis) {
+		return axis == 0 ? p.x : axis == 1 ? p.y : p.z;
+	}
+
 	private static Polygon checkForValidPolyOrentation(Vector3d normal, Polygon poly) {
 		Vector3d normal2 = poly.plane.getNormal();
 		Vector3d minus = normal.minus(normal2);
@@ -6,10 +6,13 @@
 package eu.mihosoft.vrl.v3d.ext.quickhull3d;
 
 import eu.mihosoft.vrl.v3d.CSG;
+import eu.mihosoft.vrl.v3d.Plane;
 import eu.mihosoft.vrl.v3d.Vector3d;
+import eu.mihosoft.vrl.v3d.Vertex;
 import eu.mihosoft.vrl.v3d.Polygon;
 import eu.mihosoft.vrl.v3d.PropertyStorage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -59,32 +62,113 @@ public class HullUtil {
 	 */
 	public static CSG hull(List<Vector3d> points, PropertyStorage storage) {
 
-		Point3d[] hullPoints = points.stream().map((vec) -> new Point3d(vec.x, vec.y, vec.z)).toArray(Point3d[]::new);
+		double[] coords = new double[points.size() * 3];
+		int k = 0;
+		for (Vector3d p : points) {
+			coords[k++] = p.x;
+			coords[k++] = p.y;
+			coords[k++] = p.z;
+		}
+
+		return hull(coords, points.size(), storage);
+	}
+
+	/**
+	 * Computes the convex hull of points given by an array of coordinates.
+	 * <p>
+	 * Duplicate points are removed before the hull is built, and the polygons
+	 * are created directly on the planes of the hull faces instead of fitting a
+	 * plane to their vertices. The coordinate array is not modified.
+	 *
+	 * @param coords
+	 *            x, y, and z coordinates of each point
+	 * @param count
+	 *            the number of points
+	 * @param storage
+	 *            the storage
+	 * @return the csg
+	 * @throws IllegalArgumentException
+	 *             if there are less than four distinct points, or the points
+	 *             are colinear or coplanar
+	 */
+	public static CSG hull(double[] coords, int count, PropertyStorage storage) {
+
+		double[] unique = Arrays.copyOf(coords, count * 3);
+		int numPoints = removeDuplicates(unique, count);
 
 		QuickHull3D hull = new QuickHull3D();
-		hull.build(hullPoints);
+		hull.build(unique, numPoints);
 		hull.triangulate();
 
 		int[][] faces = hull.getFaces();
+		double[] normals = hull.getFaceNormals();
+		double[] vertexCoords = new double[hull.getNumVertices() * 3];
+		hull.getVertices(vertexCoords);
 
-		List<Polygon> polygons = new ArrayList<>();
-
-		List<Vector3d> vertices = new ArrayList<>();
+		List<Polygon> polygons = new ArrayList<>(faces.length);
 
-		for (int[] verts : faces) {
+		for (int f = 0; f < faces.length; f++) {
+			int[] verts = faces[f];
+			Vector3d normal = new Vector3d(normals[f * 3], normals[f * 3 + 1], normals[f * 3 + 2]);
 
+			List<Vertex> vertices = new ArrayList<>(verts.length);
 			for (int i : verts) {
-				vertices.add(points.get(hull.getVertexPointIndices()[i]));
+				Vector3d pos = new Vector3d(vertexCoords[i * 3], vertexCoords[i * 3 + 1], vertexCoords[i * 3 + 2]);
+				vertices.add(new Vertex(pos, normal));
 			}
 
-			polygons.add(Polygon.fromPoints(vertices, storage));
-
-			vertices.clear();
+			Plane plane = new Plane(normal, normal.dot(vertices.get(0).pos));
+			polygons.add(new Polygon(vertices, storage, plane));
 		}
 
 		return CSG.fromPolygons(polygons);
 	}
 
+	/**
+	 * Removes exact duplicates from an array of point coordinates, keeping the
+	 * first occurrence of every point.
+	 *
+	 * @param coords
+	 *            x, y, and z coordinates of each point, compacted in place
+	 * @param count
+	 *            the number of points
+	 * @return the number of distinct points
+	 */
+	static int removeDuplicates(double[] coords, int count) {
+		int capacity = Integer.highestOneBit(Math.max(16, count * 2) - 1) << 1;
+		int mask = capacity - 1;
+		int[] table = new int[capacity];
+		Arrays.fill(table, -1);
+
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			// adding zero turns -0.0 into 0.0, both are the same point
+			double x = coords[i * 3] + 0.0;
+			double y = coords[i * 3 + 1] + 0.0;
+			double z = coords[i * 3 + 2] + 0.0;
+			long h = Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L
+					^ Double.doubleToLongBits(y) * 0xC2B2AE3D27D4EB4FL
+					^ Double.doubleToLongBits(z) * 0x165667B19E3779F9L;
+			int slot = (int) (h ^ (h >>> 32)) & mask;
+			boolean duplicate = false;
+			for (int j = table[slot]; j >= 0; slot = (slot + 1) & mask, j = table[slot]) {
+				if (coords[j * 3] == x && coords[j * 3 + 1] == y && coords[j * 3 + 2] == z) {
+					duplicate = true;
+					break;
+				}
+			}
+			if (!duplicate) {
+				// unique <= i, so only points already read are overwritten
+				table[slot] = unique;
+				coords[unique * 3] = x;
+				coords[unique * 3 + 1] = y;
+				coords[unique * 3 + 2] = z;
+				unique++;
+			}
+		}
+		return unique;
+	}
+
 	/**
 	 * Hull.
 	 *
@@ -96,11 +180,7 @@ public class HullUtil {
 	 */
 	public static CSG hull(CSG csg, PropertyStorage storage) {
 
-		List<Vector3d> points = new ArrayList<>(csg.getPolygons().size() * 3);
-
-		csg.getPolygons().forEach((p) -> p.vertices.forEach((v) -> points.add(v.pos)));
-
-		return hull(points, storage);
+		return hull(new CSG[] { csg }, storage);
 	}
 
 	/**
@@ -112,10 +192,25 @@ public class HullUtil {
 	 */
 	public static CSG hull(CSG... csgList) {
 
-		List<Vector3d> points = new ArrayList<>();
+		return hull(csgList, new PropertyStorage());
+	}
+
+	private static CSG hull(CSG[] csgList, PropertyStorage storage) {
+		int count = 0;
 		for (CSG csg : csgList)
-			csg.getPolygons().forEach((p) -> p.vertices.forEach((v) -> points.add(v.pos)));
+			for (Polygon p : csg.getPolygons())
+				count += p.vertices.size();
 
-		return hull(points, new PropertyStorage());
+		double[] coords = new double[count * 3];
+		int k = 0;
+		for (CSG csg : csgList)
+			for (Polygon p : csg.getPolygons())
+				for (Vertex v : p.vertices) {
+					coords[k++] = v.pos.x;
+					coords[k++] = v.pos.y;
+					coords[k++] = v.pos.z;
+				}
+
+		return hull(coords, count, storage);
 	}
 }
@@ -1022,6 +1022,26 @@ protected void initBuffers (int nump)
 	   return allFaces;
 	 }
 
+	/**
+	 * Returns the outward unit normals of the faces of this hull, in
+	 * the order of {@link #getFaces()}.
+	 *
+	 * @return x, y, and z components of the normal of each face. The
+	 * length of this array is three times the number of faces.
+	 */
+	public double[] getFaceNormals ()
+	 {
+	   double[] normals = new double[faces.size()*3];
+	   int k = 0;
+	   for (Iterator it=faces.iterator(); it.hasNext(); )
+	    { Vector3d normal = ((Face)it.next()).getNormal();
+	      normals[k++] = normal.x;
+	      normals[k++] = normal.y;
+	      normals[k++] = normal.z;
+	    }
+	   return normals;
+	 }
+
 	/**
 	 * Prints the vertices and faces of this hull to the stream ps.
 	 *
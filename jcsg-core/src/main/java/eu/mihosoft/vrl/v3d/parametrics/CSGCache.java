@@ -1,19 +1,357 @@
 package eu.mihosoft.vrl.v3d.parametrics;
 
-import java.util.HashMap;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import eu.mihosoft.vrl.v3d.CSG;
 import eu.mihosoft.vrl.v3d.ItoCSG;
+import eu.mihosoft.vrl.v3d.Polygon;
 
+/**
+ * Cache of generated CSGs.
+ * <p>
+ * The size of the cache is bounded by the total number of vertices of the
+ * cached CSGs; the least recently used entries are evicted first. Entries can
+ * optionally be held by soft references, so the garbage collector may drop
+ * them under memory pressure. Concurrent requests for a key that is not cached
+ * share one computation.
+ * <p>
+ * The cached instances are returned as they are, callers must not modify them.
+ */
 public class CSGCache {
-	private HashMap<String , CSG> chache = new HashMap<>();
-	
-	CSG get(String key, ItoCSG builder){
-		if(chache.get(key) == null){
-			chache.put(key, builder.toCSG());
+
+	/** Default vertex budget of a cache. */
+	public static final long DEFAULT_MAX_VERTICES = 5_000_000L;
+
+	private final long maxVertices;
+	private final boolean softReferences;
+
+	/** Access ordered, guarded by itself. */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final ConcurrentHashMap<String, CompletableFuture<CSG>> inFlight = new ConcurrentHashMap<>();
+	private final ReferenceQueue<CSG> collected = new ReferenceQueue<>();
+	private long vertices;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a cache with strong references and the default vertex budget.
+	 */
+	public CSGCache() {
+		this(DEFAULT_MAX_VERTICES, false);
+	}
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maxVertices    the maximum total number of vertices of the cached
+	 *                       CSGs
+	 * @param softReferences true to hold the cached CSGs by soft references
+	 */
+	public CSGCache(long maxVertices, boolean softReferences) {
+		if (maxVertices <= 0) {
+			throw new IllegalArgumentException("The vertex budget must be positive, got " + maxVertices);
+		}
+		this.maxVertices = maxVertices;
+		this.softReferences = softReferences;
+	}
+
+	/**
+	 * Gets the CSG cached for a key, building and caching it if it is missing.
+	 * If another thread is already building the key, waits for its result.
+	 *
+	 * @param key     the key
+	 * @param builder builds the CSG on a miss
+	 * @return the cached or new CSG
+	 */
+	public CSG get(String key, ItoCSG builder) {
+		CSG cached = lookup(key);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached;
+		}
+		CompletableFuture<CSG> flight = new CompletableFuture<>();
+		CompletableFuture<CSG> running = inFlight.putIfAbsent(key, flight);
+		if (running != null) {
+			hits.incrementAndGet();
+			return await(running);
+		}
+		try {
+			// the previous flight may have finished after the first lookup
+			cached = lookup(key);
+			if (cached != null) {
+				hits.incrementAndGet();
+			} else {
+				misses.incrementAndGet();
+				cached = builder.toCSG();
+				put(key, cached);
+			}
+			flight.complete(cached);
+			return cached;
+		} catch (RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+
+	/**
+	 * Gets the CSG cached for a part and the current values of its parameters,
+	 * building and caching it if it is missing.
+	 *
+	 * @param name       the name of the part
+	 * @param parameters the names of the parameters in the {@link CSGDatabase}
+	 *                   the part depends on
+	 * @param builder    builds the CSG on a miss
+	 * @return the cached or new CSG
+	 * @see #key(String, List)
+	 */
+	public CSG get(String name, List<String> parameters, ItoCSG builder) {
+		return get(key(name, parameters), builder);
+	}
+
+	/**
+	 * Creates a cache key from the name of a part and the current values of its
+	 * parameters in the {@link CSGDatabase}. Parameters missing from the
+	 * database are keyed as {@code null}.
+	 *
+	 * @param name       the name of the part
+	 * @param parameters the names of the parameters
+	 * @return the key
+	 */
+	public static String key(String name, List<String> parameters) {
+		StringBuilder sb = new StringBuilder(name).append('[');
+		for (int i = 0; i < parameters.size(); i++) {
+			String parameter = parameters.get(i);
+			Parameter p = CSGDatabase.get(parameter);
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(parameter).append('=');
+			if (p == null) {
+				sb.append("null");
+			} else if (p.getValue() != null) {
+				sb.append(p.getValue());
+			} else {
+				sb.append('"').append(p.getStrValue()).append('"');
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+	private static CSG await(CompletableFuture<CSG> flight) {
+		try {
+			return flight.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	private CSG lookup(String key) {
+		synchronized (entries) {
+			purgeCollected();
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			CSG csg = entry.get();
+			if (csg == null) {
+				remove(key);
+				evictions.incrementAndGet();
+			}
+			return csg;
+		}
+	}
+
+	private void put(String key, CSG csg) {
+		long weight = weight(csg);
+		if (weight > maxVertices) {
+			return;
+		}
+		synchronized (entries) {
+			remove(key);
+			entries.put(key, softReferences ? new SoftEntry(key, csg, weight, collected) : new StrongEntry(csg, weight));
+			vertices += weight;
+			Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+			while (vertices > maxVertices && eldest.hasNext()) {
+				Entry entry = eldest.next().getValue();
+				eldest.remove();
+				vertices -= entry.weight();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			vertices -= entry.weight();
+		}
+	}
+
+	/**
+	 * Drops the entries whose soft references were cleared.
+	 */
+	private void purgeCollected() {
+		SoftEntry cleared;
+		while ((cleared = (SoftEntry) collected.poll()) != null) {
+			if (entries.get(cleared.key) == cleared) {
+				remove(cleared.key);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private static long weight(CSG csg) {
+		long weight = 0;
+		for (Polygon p : csg.getPolygons()) {
+			weight += p.vertices.size();
+		}
+		return weight;
+	}
+
+	/**
+	 * Removes the entry of a key.
+	 *
+	 * @param key the key
+	 */
+	public void invalidate(String key) {
+		synchronized (entries) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * Removes all entries. The counters are kept.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			vertices = 0;
+			while (collected.poll() != null) {
+				// drop stale notifications
+			}
 		}
-		return chache.get(key);
 	}
-	
 
+	/**
+	 * Gets the number of cached entries.
+	 *
+	 * @return the number of entries
+	 */
+	public int size() {
+		synchronized (entries) {
+			purgeCollected();
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Gets the total number of vertices of the cached CSGs.
+	 *
+	 * @return the number of vertices
+	 */
+	public long getVertexCount() {
+		synchronized (entries) {
+			purgeCollected();
+			return vertices;
+		}
+	}
+
+	public long getMaxVertices() {
+		return maxVertices;
+	}
+
+	public boolean isSoftReferences() {
+		return softReferences;
+	}
+
+	/**
+	 * Gets the number of requests answered without building, including requests
+	 * that waited for a concurrent build of the same key.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of requests that built a CSG.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of entries dropped for the vertex budget or collected by
+	 * the garbage collector.
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	private interface Entry {
+		CSG get();
+
+		long weight();
+	}
+
+	private static final class StrongEntry implements Entry {
+		private final CSG csg;
+		private final long weight;
+
+		StrongEntry(CSG csg, long weight) {
+			this.csg = csg;
+			this.weight = weight;
+		}
+
+		@Override
+		public CSG get() {
+			return csg;
+		}
+
+		@Override
+		public long weight() {
+			return weight;
+		}
+	}
+
+	private static final class SoftEntry extends SoftReference<CSG> implements Entry {
+		private final String key;
+		private final long weight;
+
+		SoftEntry(String key, CSG csg, long weight, ReferenceQueue<CSG> queue) {
+			super(csg, queue);
+			this.key = key;
+			this.weight = weight;
+		}
+
+		@Override
+		public long weight() {
+			return weight;
+		}
+	}
 }
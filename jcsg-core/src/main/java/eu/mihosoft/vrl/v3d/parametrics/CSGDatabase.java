@@ -3,10 +3,19 @@ package eu.mihosoft.vrl.v3d.parametrics;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -16,12 +25,24 @@ import com.google.gson.reflect.TypeToken;
 
 public class CSGDatabase {
 	
-	private static ConcurrentHashMap<String,Parameter> database=null;
+	private static volatile ConcurrentHashMap<String,Parameter> database=null;
 	private static File dbFile=new File("CSGdatabase.json");
     private static final Type TT_mapStringString = new TypeToken<ConcurrentHashMap<String,Parameter>>(){}.getType();
     private static final Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+    private static final Gson gsonCompact = new GsonBuilder().disableHtmlEscaping().create();
+    private static volatile long writeBehindMillis = 0;
+    private static final Object persistenceLock = new Object();
+    private static final Object writeLock = new Object();
+    private static ScheduledExecutorService persistence;
+    private static ScheduledFuture<?> pendingSave;
+    /** A save was requested that no write has picked up yet, guarded by persistenceLock. */
+    private static boolean saveRequested;
+    /** A write-behind task is queued and has not started yet, guarded by persistenceLock. */
+    private static boolean saveScheduled;
     //private static final HashMap<String,ArrayList<IParameterChanged>> parameterListeners=new HashMap<>();
     private static final ConcurrentHashMap<String, CopyOnWriteArrayList<IParameterChanged>> parameterListeners = new ConcurrentHashMap<>();
+    /** Keys read through {@link #get(String)} by the current thread, null if not recording. */
+    private static final ThreadLocal<Set<String>> recordedKeys = new ThreadLocal<>();
 	public static void set(String key, Parameter value){
 		getDatabase();
 		//synchronized(database){
@@ -29,6 +50,10 @@ public class CSGDatabase {
 		//}
 	}
 	public static Parameter get(String key){
+		Set<String> recording = recordedKeys.get();
+		if (recording != null) {
+			recording.add(key);
+		}
 		Parameter ret =null;
 		getDatabase();// load database before synchronization
 		//synchronized(database){
@@ -37,6 +62,28 @@ public class CSGDatabase {
 		return ret;
 	}
 	
+	/**
+	 * Runs a computation and collects the keys it reads from the database on the
+	 * calling thread.
+	 *
+	 * @param keys        receives the keys
+	 * @param computation the computation
+	 * @return the result of the computation
+	 */
+	static <T> T recordKeys(Set<String> keys, Supplier<T> computation) {
+		Set<String> previous = recordedKeys.get();
+		recordedKeys.set(keys);
+		try {
+			return computation.get();
+		} finally {
+			if (previous == null) {
+				recordedKeys.remove();
+			} else {
+				recordedKeys.set(previous);
+			}
+		}
+	}
+
 	public static   void clear(){
 
 		getDatabase();
@@ -90,61 +137,32 @@ public class CSGDatabase {
 		//}
 	}
 	private static ConcurrentHashMap<String,Parameter> getDatabase() {
-		if(database==null){
-			new Thread(){
-				public void run(){
-					String jsonString;
-					try {
-						
-						if(!getDbFile().exists()){
-							setDatabase(new ConcurrentHashMap<String,Parameter>());
-						}
-						else{
-					        InputStream in = null;
-					        try {
-					            in = FileUtils.openInputStream(getDbFile());
-					            jsonString= IOUtils.toString(in);
-					        } finally {
-					            IOUtils.closeQuietly(in);
-					        }
-					        ConcurrentHashMap<String,Parameter> tm=gson.fromJson(jsonString, TT_mapStringString);
-					        
-					        
-					        if(tm!=null){
-//					        	////System.out.println("Hash Map loaded from "+jsonString);
-//					        	for(String k:tm.keySet()){
-//						        	////System.out.println("Key: "+k+" vlaue= "+tm.get(k));
-//						        }
-					        	setDatabase(tm);
-					        }
-						}
-					} catch (Exception e) {
-						e.printStackTrace();
-						//System.out.println(dbFile.getAbsolutePath());
-						setDatabase(new ConcurrentHashMap<String,Parameter>());
-					}
-					Runtime.getRuntime().addShutdownHook(new Thread() {
-						@Override
-						public void run() {
-							saveDatabase();
-						}
-					});
-				}
-			}.start();
-			long start = System.currentTimeMillis();
-			while(database==null){
+		ConcurrentHashMap<String,Parameter> db = database;
+		if(db!=null){
+			return db;
+		}
+		synchronized (CSGDatabase.class) {
+			if(database==null){
+				ConcurrentHashMap<String,Parameter> loaded=null;
 				try {
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
+					if(getDbFile().exists()){
+						String jsonString = FileUtils.readFileToString(getDbFile(), StandardCharsets.UTF_8);
+						loaded=gson.fromJson(jsonString, TT_mapStringString);
+					}
+				} catch (Exception e) {
 					e.printStackTrace();
+					//System.out.println(dbFile.getAbsolutePath());
 				}
-				if((System.currentTimeMillis()-start)>500){
-					setDatabase(new ConcurrentHashMap<String,Parameter>());
-				}
+				setDatabase(loaded!=null?loaded:new ConcurrentHashMap<String,Parameter>());
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					@Override
+					public void run() {
+						writeDatabase();
+					}
+				});
 			}
+			return database;
 		}
-		return database;
 	}
 	
 	public static void loadDatabaseFromFile(File f){
@@ -179,24 +197,158 @@ public class CSGDatabase {
 		return writeOut;
 	}
 	
+	/**
+	 * Saves the database to the database file. In write-behind mode the write is
+	 * scheduled on a background thread, and all saves requested until it starts
+	 * are coalesced into it. A save requested while that write is running
+	 * schedules another one.
+	 *
+	 * @see #setWriteBehindMillis(long)
+	 */
 	public static void saveDatabase(){
-		String writeOut=getDataBaseString();
-		try {
-			if(!getDbFile().exists()){
-				getDbFile().createNewFile();
+		long delay = writeBehindMillis;
+		if(delay<=0){
+			writeDatabase();
+			return;
+		}
+		synchronized (persistenceLock) {
+			saveRequested=true;
+			if(saveScheduled){
+				return;
+			}
+			saveScheduled=true;
+			pendingSave = getPersistence().schedule(CSGDatabase::writeRequested, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes a pending write-behind save now and waits for it. If a write-behind
+	 * save is already being written, this waits for that write to finish first.
+	 */
+	public static void flush(){
+		boolean requested;
+		synchronized (persistenceLock) {
+			requested=saveRequested;
+			saveRequested=false;
+			saveScheduled=false;
+			if(pendingSave!=null){
+				pendingSave.cancel(false);
+				pendingSave=null;
+			}
+		}
+		if(requested){
+			writeDatabase();
+		}else{
+			// wait for a write that has already taken the request
+			synchronized (writeLock) {
 			}
-	        OutputStream out = null;
-	        try {
-	            out = FileUtils.openOutputStream(getDbFile(), false);
-	            IOUtils.write(writeOut, out);
-	            out.flush();
-	            out.close(); // don't swallow close Exception if copy completes normally
-	        } finally {
-	            IOUtils.closeQuietly(out);
-	        }
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Runs a scheduled write-behind save. The request is taken before the
+	 * database is serialized, so a save requested during the write is written by
+	 * a later task instead of being lost. It is taken while holding the write
+	 * lock, so {@link #flush()} can wait for the write.
+	 */
+	private static void writeRequested(){
+		synchronized (writeLock) {
+			synchronized (persistenceLock) {
+				saveScheduled=false;
+				if(!saveRequested){
+					return;
+				}
+				saveRequested=false;
+			}
+			writeDatabase();
+		}
+	}
+
+	/**
+	 * Writes the database to a temporary file next to the database file and
+	 * renames it over the database file, so readers never see a partial file.
+	 */
+	private static void writeDatabase(){
+		synchronized (writeLock) {
+			File target = getDbFile().getAbsoluteFile();
+			String writeOut = writeBehindMillis > 0 ? gsonCompact.toJson(getDatabase(), TT_mapStringString)
+					: getDataBaseString();
+			File temp = null;
+			try {
+				File dir = target.getParentFile();
+				if(dir!=null && !dir.exists()){
+					dir.mkdirs();
+				}
+				// the prefix of a temp file needs 3 characters, whatever the file name
+				temp = File.createTempFile("." + target.getName() + "-", ".tmp", dir);
+				FileUtils.writeStringToFile(temp, writeOut, StandardCharsets.UTF_8);
+				copyPermissions(target, temp);
+				try {
+					Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+				if(temp!=null){
+					temp.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives the temporary file the permissions of the database file it replaces,
+	 * temporary files are only readable by the owner.
+	 */
+	private static void copyPermissions(File target, File temp) throws IOException {
+		if(!target.exists()){
+			return;
+		}
+		try {
+			Files.setPosixFilePermissions(temp.toPath(), Files.getPosixFilePermissions(target.toPath()));
+		} catch (UnsupportedOperationException e) {
+			// not a POSIX file system, the temporary file has the default permissions
+		}
+	}
+
+	private static ScheduledExecutorService getPersistence() {
+		if(persistence==null){
+			persistence = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "CSGDatabase persistence");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return persistence;
+	}
+
+	/**
+	 * Gets the write-behind window.
+	 *
+	 * @return the window in milliseconds, 0 if saves are written immediately
+	 */
+	public static long getWriteBehindMillis() {
+		return writeBehindMillis;
+	}
+
+	/**
+	 * Sets the write-behind window. With a positive window, saves are coalesced
+	 * and written as compact JSON on a background thread after the window has
+	 * passed; pending saves are also written on shutdown. With 0, the default,
+	 * every save writes the pretty printed database on the calling thread.
+	 *
+	 * @param writeBehindMillis the window in milliseconds
+	 */
+	public static void setWriteBehindMillis(long writeBehindMillis) {
+		if(writeBehindMillis<0){
+			throw new IllegalArgumentException("The write-behind window must not be negative");
+		}
+		CSGDatabase.writeBehindMillis = writeBehindMillis;
+		if(writeBehindMillis==0){
+			flush();
 		}
 	}
 	private static void setDatabase(ConcurrentHashMap<String,Parameter> database) {
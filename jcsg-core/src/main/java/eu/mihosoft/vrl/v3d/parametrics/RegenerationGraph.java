@@ -0,0 +1,397 @@
+package eu.mihosoft.vrl.v3d.parametrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import eu.mihosoft.vrl.v3d.CSG;
+import eu.mihosoft.vrl.v3d.ItoCSG;
+
+/**
+ * Dependency graph of parametric CSG operations.
+ * <p>
+ * Sources build CSGs from parameters, operations combine the CSGs of other
+ * nodes. While a node is computed, the keys it reads from the
+ * {@link CSGDatabase} are recorded, and a parameter listener is registered for
+ * each of them. A parameter change only marks the nodes that read it, and the
+ * nodes depending on those, as dirty. {@link #get(Node)} then recomputes just
+ * the dirty nodes; independent dirty inputs of a node are computed in
+ * parallel on the fork/join pool.
+ * <p>
+ * Results are also kept in a {@link CSGCache}, keyed by the node and the
+ * parameter values it was computed from, so returning to earlier values does
+ * not rebuild anything.
+ */
+public class RegenerationGraph {
+
+	private static final AtomicInteger graphs = new AtomicInteger();
+
+	/** Prefix of the cache keys, the cache may be shared with other graphs. */
+	private final String id = "graph" + graphs.incrementAndGet();
+	private final CSGCache cache;
+	private final List<Node> nodes = new CopyOnWriteArrayList<>();
+	/** Nodes reading a database key. */
+	private final ConcurrentHashMap<String, Set<Node>> consumers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, IParameterChanged> listeners = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a graph with its own cache.
+	 */
+	public RegenerationGraph() {
+		this(new CSGCache());
+	}
+
+	/**
+	 * Creates a graph that keeps its results in the specified cache.
+	 *
+	 * @param cache the cache
+	 */
+	public RegenerationGraph(CSGCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Adds a node that builds a CSG from parameters.
+	 *
+	 * @param name    the name of the node
+	 * @param builder builds the CSG, reading its parameters from the
+	 *                {@link CSGDatabase}
+	 * @return the node
+	 */
+	public Node source(String name, ItoCSG builder) {
+		return add(new Node(name, builder, null, Collections.<Node>emptyList()));
+	}
+
+	/**
+	 * Adds a node that combines the CSGs of other nodes.
+	 *
+	 * @param name      the name of the node
+	 * @param operation computes the CSG from the CSGs of the inputs, in order
+	 * @param inputs    the input nodes
+	 * @return the node
+	 */
+	public Node operation(String name, Function<List<CSG>, CSG> operation, Node... inputs) {
+		for (Node input : inputs) {
+			if (!nodes.contains(input)) {
+				throw new IllegalArgumentException("Node " + input.getName() + " is not part of this graph");
+			}
+		}
+		Node node = add(new Node(name, null, operation, Arrays.asList(inputs.clone())));
+		for (Node input : inputs) {
+			input.dependents.add(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Adds a node that unions the CSGs of other nodes.
+	 *
+	 * @param name   the name of the node
+	 * @param inputs the input nodes
+	 * @return the node
+	 */
+	public Node union(String name, Node... inputs) {
+		return operation(name, csgs -> csgs.get(0).union(csgs.subList(1, csgs.size())), inputs);
+	}
+
+	/**
+	 * Adds a node that subtracts the CSGs of other nodes from the CSG of a node.
+	 *
+	 * @param name    the name of the node
+	 * @param target  the node to subtract from
+	 * @param cutters the nodes to subtract
+	 * @return the node
+	 */
+	public Node difference(String name, Node target, Node... cutters) {
+		Node[] inputs = new Node[cutters.length + 1];
+		inputs[0] = target;
+		System.arraycopy(cutters, 0, inputs, 1, cutters.length);
+		return operation(name, csgs -> csgs.get(0).difference(csgs.subList(1, csgs.size())), inputs);
+	}
+
+	/**
+	 * Adds a node that intersects the CSGs of other nodes.
+	 *
+	 * @param name   the name of the node
+	 * @param inputs the input nodes
+	 * @return the node
+	 */
+	public Node intersect(String name, Node... inputs) {
+		return operation(name, csgs -> csgs.get(0).intersect(csgs.subList(1, csgs.size())), inputs);
+	}
+
+	private Node add(Node node) {
+		node.id = id + "#" + nodes.size();
+		nodes.add(node);
+		return node;
+	}
+
+	/**
+	 * Gets the current CSG of a node, recomputing it and its inputs if they are
+	 * dirty.
+	 *
+	 * @param node the node
+	 * @return the CSG
+	 */
+	public CSG get(Node node) {
+		synchronized (node) {
+			return evaluate(node).value;
+		}
+	}
+
+	/**
+	 * Gets a regeneration function that returns the current CSG of a node.
+	 *
+	 * @param node the node
+	 * @return the regeneration function
+	 */
+	public IRegenerate regenerator(Node node) {
+		return previous -> get(node);
+	}
+
+	/**
+	 * Gets the cache of this graph.
+	 *
+	 * @return the cache
+	 */
+	public CSGCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Removes the parameter listeners of this graph from the
+	 * {@link CSGDatabase}.
+	 */
+	public void dispose() {
+		for (String key : listeners.keySet()) {
+			CSGDatabase.removeParameterListener(key, listeners.remove(key));
+		}
+	}
+
+	/**
+	 * Marks every node reading a key, and everything depending on those, dirty.
+	 */
+	private void invalidate(String key) {
+		Set<Node> readers = consumers.get(key);
+		if (readers == null) {
+			return;
+		}
+		ArrayDeque<Node> queue = new ArrayDeque<>(readers);
+		Set<Node> seen = new HashSet<>();
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			if (seen.add(node)) {
+				synchronized (node.versionLock) {
+					node.version++;
+					node.dirty = true;
+				}
+				queue.addAll(node.dependents);
+			}
+		}
+	}
+
+	private Node evaluate(Node node) {
+		synchronized (node) {
+			if (!node.dirty) {
+				return node;
+			}
+			long version;
+			synchronized (node.versionLock) {
+				version = node.version;
+			}
+			List<CSG> inputs = new ArrayList<>(node.inputs.size());
+			List<String> tokens = new ArrayList<>(node.inputs.size());
+			evaluateAll(node.inputs, inputs, tokens);
+
+			String key = signature(node, node.keys, tokens);
+			Set<String> read = Collections.synchronizedSet(new TreeSet<>());
+			boolean[] built = new boolean[1];
+			CSG value = cache.get(key, () -> CSGDatabase.recordKeys(read, () -> {
+				built[0] = true;
+				return node.builder != null ? node.builder.toCSG() : node.operation.apply(inputs);
+			}));
+			if (built[0] && !read.equals(node.keys)) {
+				// the node read other keys than the signature covered, key the
+				// result by the keys it actually read
+				cache.invalidate(key);
+				track(node, read);
+				key = signature(node, node.keys, tokens);
+				CSG computed = value;
+				cache.get(key, () -> computed);
+			}
+			node.value = value;
+			// inputs are referenced by a short token instead of their whole key
+			Integer revision = node.revisions.get(key);
+			if (revision == null) {
+				revision = node.revisions.size();
+				node.revisions.put(key, revision);
+			}
+			node.token = node.id + "@" + revision;
+			synchronized (node.versionLock) {
+				// a parameter changed while computing, keep the node dirty
+				node.dirty = node.version != version;
+			}
+			return node;
+		}
+	}
+
+	/**
+	 * Creates the cache key of a node from its identity, the current values of
+	 * the specified keys and the keys of its inputs.
+	 */
+	private static String signature(Node node, Set<String> keys, List<String> inputTokens) {
+		StringBuilder signature = new StringBuilder(node.id).append(':');
+		signature.append(CSGCache.key(node.getName(), new ArrayList<>(keys)));
+		if (!inputTokens.isEmpty()) {
+			signature.append('(');
+			for (String token : inputTokens) {
+				signature.append(token).append(';');
+			}
+			signature.append(')');
+		}
+		return signature.toString();
+	}
+
+	/**
+	 * Evaluates the inputs of a node, dirty ones in parallel, and collects their
+	 * values and tokens.
+	 */
+	private void evaluateAll(List<Node> inputs, List<CSG> values, List<String> tokens) {
+		List<EvaluateTask> tasks = new ArrayList<>();
+		for (Node input : inputs) {
+			if (input.dirty) {
+				tasks.add(new EvaluateTask(input));
+			}
+		}
+		if (tasks.size() > 1) {
+			if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				ForkJoinTask.invokeAll(tasks);
+			} else {
+				ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+					@Override
+					protected void compute() {
+						invokeAll(tasks);
+					}
+				});
+			}
+		}
+		for (Node input : inputs) {
+			synchronized (input) {
+				evaluate(input);
+				values.add(input.value);
+				tokens.add(input.token);
+			}
+		}
+	}
+
+	/**
+	 * Records the keys a node read and listens for their changes.
+	 */
+	private void track(Node node, Set<String> read) {
+		for (String key : node.keys) {
+			if (!read.contains(key)) {
+				Set<Node> readers = consumers.get(key);
+				if (readers != null) {
+					readers.remove(node);
+				}
+			}
+		}
+		node.keys = Collections.unmodifiableSet(new TreeSet<>(read));
+		for (String key : read) {
+			consumers.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(node);
+			listeners.computeIfAbsent(key, k -> {
+				IParameterChanged listener = (name, p) -> invalidate(name);
+				CSGDatabase.addParameterListener(k, listener);
+				return listener;
+			});
+		}
+	}
+
+	private final class EvaluateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Node node;
+
+		EvaluateTask(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		protected void compute() {
+			evaluate(node);
+		}
+	}
+
+	/**
+	 * A source or operation of a {@link RegenerationGraph}.
+	 */
+	public static final class Node {
+		private final String name;
+		private final ItoCSG builder;
+		private final Function<List<CSG>, CSG> operation;
+		private final List<Node> inputs;
+		private final List<Node> dependents = new CopyOnWriteArrayList<>();
+		private final Object versionLock = new Object();
+		private String id;
+
+		private volatile Set<String> keys = Collections.emptySet();
+		private volatile boolean dirty = true;
+		private long version;
+		private CSG value;
+		/** Identifies the key of the current value, see revisions. */
+		private String token;
+		/** Number of every cache key this node was computed with. */
+		private final HashMap<String, Integer> revisions = new HashMap<>();
+
+		private Node(String name, ItoCSG builder, Function<List<CSG>, CSG> operation, List<Node> inputs) {
+			this.name = name;
+			this.builder = builder;
+			this.operation = operation;
+			this.inputs = Collections.unmodifiableList(inputs);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public List<Node> getInputs() {
+			return inputs;
+		}
+
+		/**
+		 * Gets the database keys read by the last computation of this node.
+		 *
+		 * @return the keys
+		 */
+		public Set<String> getParameterKeys() {
+			return keys;
+		}
+
+		/**
+		 * Checks whether this node has to be recomputed.
+		 *
+		 * @return true if the node is dirty
+		 */
+		public boolean isDirty() {
+			return dirty;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package eu.mihosoft.vrl.v3d;
+
+import com.piro.bezier.BezierPath;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BezierPathTest {
+
+    @Test
+    public void parsePathString_ShouldSplitCompactNumbers() {
+        List<Vector3d> points = new BezierPath("M10,20L30-40.5e1 L.5.5 H-2E-1e z").evaluate();
+
+        assertEquals(4, points.size());
+        assertEquals(new Vector3d(10, 20, 0), points.get(0));
+        assertEquals(new Vector3d(30, -405, 0), points.get(1));
+        assertEquals((double) 0.5f, points.get(2).x, 0);
+        assertEquals((double) 0.5f, points.get(2).y, 0);
+        // numbers are read with float precision
+        assertEquals((double) -0.2f, points.get(3).x, 0);
+    }
+
+    @Test
+    public void parsePathString_ShouldDropDuplicatePoints() {
+        StringBuilder d = new StringBuilder("M 0 0");
+        for (int i = 1; i < 2000; i++) {
+            d.append(" L ").append(i).append(' ').append(i % 7);
+        }
+        // revisit every point
+        for (int i = 0; i < 2000; i++) {
+            d.append(" L ").append(i).append(' ').append(i % 7);
+        }
+        d.append(" Z");
+
+        assertEquals(2000, new BezierPath(d.toString()).evaluate().size());
+    }
+
+    @Test
+    public void parsePathString_ShouldRejectMissingNumbers() {
+        assertThrows(NumberFormatException.class, () -> new BezierPath("M 1 2 L Z"));
+    }
+}
@@ -0,0 +1,101 @@
+package eu.mihosoft.vrl.v3d;
+
+import eu.mihosoft.vrl.v3d.parametrics.CSGCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class CSGCacheTest {
+
+    @Test
+    public void get_ShouldBuildOncePerKey() {
+        CSGCache cache = new CSGCache();
+        AtomicInteger builds = new AtomicInteger();
+        ItoCSG builder = () -> {
+            builds.incrementAndGet();
+            return new Cube(10).toCSG();
+        };
+
+        CSG first = cache.get("cube", builder);
+        CSG second = cache.get("cube", builder);
+
+        assertSame(first, second);
+        assertEquals(1, builds.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(24, cache.getVertexCount());
+    }
+
+    @Test
+    public void get_ShouldEvictLeastRecentlyUsedOverVertexBudget() {
+        // a cube has 6 quads, 24 vertices
+        CSGCache cache = new CSGCache(50, false);
+        CSG a = cache.get("a", () -> new Cube(1).toCSG());
+        cache.get("b", () -> new Cube(2).toCSG());
+        assertSame(a, cache.get("a", () -> new Cube(1).toCSG()));
+
+        cache.get("c", () -> new Cube(3).toCSG());
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(48, cache.getVertexCount());
+        assertSame(a, cache.get("a", () -> new Cube(1).toCSG()));
+        long misses = cache.getMisses();
+        cache.get("b", () -> new Cube(2).toCSG());
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    public void get_ShouldShareConcurrentBuildOfTheSameKey() throws Exception {
+        CSGCache cache = new CSGCache(1000, true);
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ItoCSG builder = () -> {
+            builds.incrementAndGet();
+            building.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Cube(10).toCSG();
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<CSG> first = pool.submit(() -> cache.get("cube", builder));
+            building.await(10, TimeUnit.SECONDS);
+            Future<CSG> second = pool.submit(() -> cache.get("cube", builder));
+            // give the second request time to join the running build
+            Thread.sleep(100);
+            release.countDown();
+
+            assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, builds.get());
+            assertEquals(1, cache.getMisses());
+            assertEquals(1, cache.getHits());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidate_ShouldForceRebuild() {
+        CSGCache cache = new CSGCache();
+        CSG first = cache.get("cube", () -> new Cube(10).toCSG());
+        cache.invalidate("cube");
+
+        assertNotSame(first, cache.get("cube", () -> new Cube(10).toCSG()));
+        assertEquals(0, cache.getEvictions());
+    }
+}
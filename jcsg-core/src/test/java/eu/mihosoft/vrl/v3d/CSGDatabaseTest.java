@@ -0,0 +1,138 @@
+package eu.mihosoft.vrl.v3d;
+
+import eu.mihosoft.vrl.v3d.parametrics.CSGDatabase;
+import eu.mihosoft.vrl.v3d.parametrics.LengthParameter;
+import eu.mihosoft.vrl.v3d.parametrics.Parameter;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class CSGDatabaseTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void saveDatabase_ShouldCoalesceWritesInWriteBehindMode() throws IOException {
+        File file = new File(tempDir.toFile(), "CSGdatabase.json");
+        CSGDatabase.setDbFile(file);
+        try {
+            CSGDatabase.setWriteBehindMillis(60_000);
+            new LengthParameter("databaseTest.width", 12.0, new ArrayList<>());
+            CSGDatabase.saveDatabase();
+            CSGDatabase.saveDatabase();
+
+            String before = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertFalse(before.contains("databaseTest.width"));
+
+            CSGDatabase.flush();
+
+            String after = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertTrue(after.contains("\"databaseTest.width\""));
+            assertFalse(after.contains("\n"));
+            File[] leftovers = tempDir.toFile().listFiles((dir, name) -> name.endsWith(".tmp"));
+            assertEquals(0, leftovers.length);
+        } finally {
+            CSGDatabase.setWriteBehindMillis(0);
+        }
+    }
+
+    @Test
+    public void saveDatabase_ShouldNotDropSavesRequestedWhileWriting() throws Exception {
+        File file = new File(tempDir.toFile(), "CSGdatabase.json");
+        CSGDatabase.setDbFile(file);
+        GatedParameter gated = new GatedParameter();
+        try {
+            CSGDatabase.setWriteBehindMillis(1);
+            CSGDatabase.set("databaseTest.gated", gated);
+            CSGDatabase.saveDatabase();
+            assertTrue(gated.gate.entered.await(10, TimeUnit.SECONDS));
+
+            // the background write is now serializing the database
+            new LengthParameter("databaseTest.late", 1.0, new ArrayList<>());
+            CSGDatabase.saveDatabase();
+            gated.gate.release.countDown();
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            String after = "";
+            while (!after.contains("\"databaseTest.late\"") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                after = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            }
+            assertTrue(after.contains("\"databaseTest.late\""));
+        } finally {
+            gated.gate.release.countDown();
+            CSGDatabase.setWriteBehindMillis(0);
+            CSGDatabase.delete("databaseTest.gated");
+            CSGDatabase.delete("databaseTest.late");
+        }
+    }
+
+    @Test
+    public void saveDatabase_ShouldKeepShortFileNameAndPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File file = new File(tempDir.toFile(), "db");
+        CSGDatabase.setDbFile(file);
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(file.toPath(), permissions);
+
+        new LengthParameter("databaseTest.short", 3.0, new ArrayList<>());
+        CSGDatabase.saveDatabase();
+
+        String after = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(after.contains("\"databaseTest.short\""));
+        assertEquals(permissions, Files.getPosixFilePermissions(file.toPath()));
+        CSGDatabase.delete("databaseTest.short");
+    }
+
+    private static class GatedParameter extends Parameter {
+        private final Gate gate = new Gate();
+    }
+
+    /** Blocks the first write that serializes it until released. */
+    @JsonAdapter(GateAdapter.class)
+    private static class Gate {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+    }
+
+    private static class GateAdapter extends TypeAdapter<Gate> {
+        @Override
+        public void write(JsonWriter out, Gate gate) throws IOException {
+            gate.entered.countDown();
+            try {
+                gate.release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            out.value("gate");
+        }
+
+        @Override
+        public Gate read(JsonReader in) throws IOException {
+            in.skipValue();
+            return new Gate();
+        }
+    }
+}
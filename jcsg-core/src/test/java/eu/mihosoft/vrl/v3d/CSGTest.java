@@ -10,6 +10,7 @@ import java.util.stream.Collectors;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -202,4 +203,140 @@ public class CSGTest {
         CSG text = CSG.text("e", 1);
         assertFalse( text.getPolygons().isEmpty(), "Should be able to generate a shape for default text");
     }
+
+    @Test
+    public void unionAll_ShouldConcatenateDisjointPartsAndKeepLastColor() {
+        List<CSG> cubes = new java.util.ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cubes.add(new Cube(10).toCSG().movex(i * 20).setColor(i == 9 ? RED : BLUE));
+        }
+
+        CSG union = CSG.unionAll(cubes);
+
+        assertEquals(60, union.getPolygons().size(), "Disjoint cubes should not be split");
+        assertEquals(RED, union.getColor());
+        assertEquals(-5, union.getMinX(), 1e-6);
+        assertEquals(185, union.getMaxX(), 1e-6);
+    }
+
+    @Test
+    public void difference_WithListShouldMatchDifferenceWithUnionBounds() {
+        CSG plate = new Cube(100, 100, 10).toCSG();
+        List<CSG> holes = new java.util.ArrayList<>();
+        for (int x = -2; x <= 2; x++) {
+            for (int y = -2; y <= 2; y++) {
+                holes.add(new Cylinder(3, 20, 16).toCSG().movez(-10).movex(x * 20).movey(y * 20));
+            }
+        }
+        // entirely outside the plate
+        holes.add(new Cube(5).toCSG().movex(500));
+
+        CSG cutter = holes.get(0);
+        for (int i = 1; i < holes.size(); i++) {
+            cutter = cutter.union(holes.get(i));
+        }
+        CSG expected = plate.difference(cutter);
+        CSG result = plate.difference(holes);
+
+        assertFalse(result.getPolygons().isEmpty());
+        assertEquals(expected.getMinX(), result.getMinX(), 1e-6);
+        assertEquals(expected.getMaxX(), result.getMaxX(), 1e-6);
+        assertEquals(expected.getMinY(), result.getMinY(), 1e-6);
+        assertEquals(expected.getMaxY(), result.getMaxY(), 1e-6);
+        assertEquals(expected.getMinZ(), result.getMinZ(), 1e-6);
+        assertEquals(expected.getMaxZ(), result.getMaxZ(), 1e-6);
+    }
+
+    @Test
+    public void clone_ShouldShareVectorsUntilTheyChange() {
+        CSG cube = new Cube(10).toCSG();
+        CSG copy = cube.clone();
+        Polygon original = cube.getPolygons().get(0);
+        Polygon polygon = copy.getPolygons().get(0);
+        Vector3d pos = original.vertices.get(0).pos;
+        Vector3d before = new Vector3d(pos.x, pos.y, pos.z);
+        assertSame(pos, polygon.vertices.get(0).pos);
+        assertEquals(original.plane.getNormal(), polygon.plane.getNormal());
+
+        polygon.transform(new Transform().movex(5));
+        polygon.flip();
+
+        assertSame(pos, original.vertices.get(0).pos);
+        assertEquals(before.x, pos.x, 0);
+        assertEquals(before.y, pos.y, 0);
+        assertEquals(before.z, pos.z, 0);
+        assertEquals(-1, original.plane.getNormal().dot(polygon.plane.getNormal()), 1e-12);
+        assertEquals(cube.getMaxX(), cube.clone().getMaxX(), 0);
+    }
+
+    @Test
+    public void transformed_ShouldComposeChainedTransforms() {
+        CSG sphere = new Sphere(5, 16, 8).toCSG();
+        Transform[] steps = { new Transform().rotZ(30), new Transform().translateX(4), new Transform().scaleY(2),
+                new Transform().scaleZ(-1) };
+        CSG eager = CSG.fromPolygons(sphere.getPolygons().stream().map(p -> {
+            for (Transform step : steps) {
+                p = p.transformed(step);
+            }
+            return p;
+        }).collect(Collectors.toList()));
+
+        CSG chained = sphere.rotz(30).movex(4).scaley(2).mirrorz();
+        Bounds bounds = chained.getBounds();
+
+        List<Polygon> expected = eager.getPolygons();
+        List<Polygon> actual = chained.getPolygons();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Polygon e = expected.get(i);
+            Polygon a = actual.get(i);
+            assertEquals(e.vertices.size(), a.vertices.size());
+            for (int k = 0; k < e.vertices.size(); k++) {
+                assertTrue(e.vertices.get(k).pos.test(a.vertices.get(k).pos, 1e-9));
+            }
+            assertTrue(e.plane.getNormal().test(a.plane.getNormal(), 1e-9));
+            assertEquals(e.plane.getDist(), a.plane.getDist(), 1e-9);
+        }
+        assertTrue(bounds.getMin().test(eager.getBounds().getMin(), 1e-9));
+        assertTrue(bounds.getMax().test(eager.getBounds().getMax(), 1e-9));
+    }
+
+    @Test
+    public void transformed_ShouldNotSeeChangesThroughFetchedLists() {
+        CSG cube = new Cube(10).toCSG();
+        List<Polygon> fetched = cube.getPolygons();
+        CSG moved = cube.movex(20);
+        fetched.get(0).vertices.get(0).pos = new Vector3d(1000, 0, 0);
+
+        assertEquals(25, moved.getMaxX(), 1e-12);
+        for (Polygon p : moved.getPolygons()) {
+            for (Vertex v : p.vertices) {
+                assertTrue(v.pos.x <= 25 + 1e-12);
+            }
+        }
+
+        List<Polygon> own = new Cube(10).toCSG().getPolygons();
+        CSG lifted = CSG.fromPolygons(own).movez(5);
+        Vector3d n = own.get(0).plane.getNormal();
+        Vector3d normal = new Vector3d(n.x, n.y, n.z);
+        own.get(0).flip();
+
+        assertTrue(normal.test(lifted.getPolygons().get(0).plane.getNormal(), 1e-12));
+    }
+
+    @Test
+    public void transformed_ShouldNotSeeLaterChangesOfTheSource() {
+        CSG cube = new Cube(10).toCSG().setColor(BLUE);
+        CSG moved = cube.movex(20).movez(5);
+
+        assertEquals(25, moved.getMaxX(), 1e-12);
+        assertEquals(10, moved.getMaxZ(), 1e-12);
+        cube.setColor(RED);
+        cube.getPolygons().get(0).vertices.get(0).pos = new Vector3d(100, 0, 0);
+
+        moved.getPolygons().forEach(polygon -> assertEquals(BLUE, polygon.getColor()));
+        assertEquals(25, moved.getMaxX(), 1e-12);
+        assertEquals(25, moved.clone().getMaxX(), 1e-12);
+        assertEquals(RED, cube.getPolygons().get(1).getColor());
+    }
 }
@@ -0,0 +1,48 @@
+package eu.mihosoft.vrl.v3d;
+
+import eu.mihosoft.vrl.v3d.ext.quickhull3d.HullUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HullUtilTest {
+
+    @Test
+    public void hull_ShouldIgnoreDuplicatePoints() {
+        List<Vector3d> points = new ArrayList<>();
+        for (int copy = 0; copy < 50; copy++) {
+            for (int i = 0; i < 8; i++) {
+                // -0.0 and 0.0 are the same point
+                double zero = copy % 2 == 0 ? 0.0 : -0.0;
+                points.add(new Vector3d((i & 1) == 0 ? zero : 2, (i & 2) == 0 ? zero : 2, (i & 4) == 0 ? zero : 2));
+            }
+        }
+
+        CSG hull = HullUtil.hull(points, new PropertyStorage());
+
+        assertEquals(12, hull.getPolygons().size());
+        assertEquals(2, hull.getBounds().getBounds().x, 1e-12);
+        assertEquals(2, hull.getBounds().getBounds().z, 1e-12);
+    }
+
+    @Test
+    public void hull_ShouldUseOutwardFacePlanes() {
+        CSG sphere = new Sphere(5, 24, 12).toCSG().movex(3);
+        CSG hull = HullUtil.hull(sphere, new PropertyStorage());
+
+        Vector3d center = hull.getBounds().getCenter();
+        for (Polygon p : hull.getPolygons()) {
+            Plane fitted = Plane.createFromPoints(p.vertices);
+            assertEquals(0, fitted.getNormal().minus(p.plane.getNormal()).magnitude(), 1e-9);
+            assertEquals(fitted.getDist(), p.plane.getDist(), 1e-9);
+            assertTrue(p.plane.getNormal().dot(p.vertices.get(0).pos.minus(center)) > 0);
+            for (Vertex v : p.vertices) {
+                assertEquals(p.plane.getNormal(), v.normal);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package eu.mihosoft.vrl.v3d;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ManifoldRepairTest {
+
+    @Test
+    public void run_ShouldInsertTJunctionVertexIntoEdge() {
+        List<Polygon> polygons = new ArrayList<>();
+        polygons.add(Polygon.fromPoints(new Vector3d(0, 0, 0), new Vector3d(2, 0, 0),
+                new Vector3d(2, 1, 0), new Vector3d(0, 1, 0)));
+        polygons.add(Polygon.fromPoints(new Vector3d(0, 1, 0), new Vector3d(1, 1, 0),
+                new Vector3d(1, 2, 0), new Vector3d(0, 2, 0)));
+        polygons.add(Polygon.fromPoints(new Vector3d(1, 1, 0), new Vector3d(2, 1, 0),
+                new Vector3d(2, 2, 0), new Vector3d(1, 2, 0)));
+
+        int added = new ManifoldRepair(polygons, 1.0e-11).run((done, count) -> {
+        });
+
+        // (1,1,0) lies on the top edge of the first polygon, (1,2,0) on no foreign edge
+        assertEquals(1, added);
+        List<Vertex> vertices = polygons.get(0).vertices;
+        assertEquals(5, vertices.size());
+        assertEquals(new Vector3d(2, 1, 0), vertices.get(2).pos);
+        assertEquals(new Vector3d(1, 1, 0), vertices.get(3).pos);
+        assertEquals(new Vector3d(0, 1, 0), vertices.get(4).pos);
+        assertEquals(4, polygons.get(1).vertices.size());
+        assertEquals(4, polygons.get(2).vertices.size());
+    }
+
+    @Test
+    public void run_ShouldLeaveClosedMeshUnchanged() {
+        CSG sphere = new Sphere(10, 32, 16).toCSG();
+        int vertexCount = 0;
+        for (Polygon p : sphere.getPolygons()) {
+            vertexCount += p.vertices.size();
+        }
+
+        int added = new ManifoldRepair(sphere.getPolygons(), 1.0e-11).run((done, count) -> {
+        });
+
+        int after = 0;
+        for (Polygon p : sphere.getPolygons()) {
+            after += p.vertices.size();
+        }
+        assertEquals(0, added);
+        assertEquals(vertexCount, after);
+    }
+}
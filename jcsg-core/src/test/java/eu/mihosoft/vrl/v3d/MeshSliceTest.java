@@ -0,0 +1,102 @@
+package eu.mihosoft.vrl.v3d;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MeshSliceTest {
+
+    /** Signed area in the xy plane, positive for counter clockwise. */
+    private static double area(Polygon p) {
+        double sum = 0;
+        int n = p.vertices.size();
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            Vector3d a = p.vertices.get(j).pos;
+            Vector3d b = p.vertices.get(i).pos;
+            sum += a.x * b.y - b.x * a.y;
+        }
+        return sum / 2;
+    }
+
+    @Test
+    public void slice_ShouldReturnOutlineFollowedByItsHoles() {
+        CSG part = new Cube(10, 10, 10).toCSG().difference(new Cube(4, 4, 100).toCSG(),
+                new Cube(2, 2, 100).toCSG().movex(3.5));
+
+        List<Polygon> slice = new MeshSlice().slice(part, new Transform(), 0);
+
+        assertEquals(3, slice.size());
+        assertEquals(100, area(slice.get(0)), 1e-9);
+        assertEquals(-16, area(slice.get(1)), 1e-9);
+        assertEquals(-4, area(slice.get(2)), 1e-9);
+        for (Polygon p : slice) {
+            for (Vertex v : p.vertices) {
+                assertEquals(0, v.pos.z, 0);
+            }
+        }
+    }
+
+    @Test
+    public void slice_ShouldCutBottomOfPartAbovePlane() {
+        CSG part = new Cube(6, 4, 2).toCSG().toZMin().movez(3).union(new Cube(2, 2, 8).toCSG().toZMin().movez(3));
+
+        List<Polygon> slice = new MeshSlice().slice(part, new Transform(), 0);
+
+        assertEquals(1, slice.size());
+        assertEquals(24, area(slice.get(0)), 1e-9);
+    }
+
+    @Test
+    public void slice_ShouldCutInSlicePlaneFrame() {
+        CSG sphere = new Sphere(5, 64, 32).toCSG();
+        CSG island = new Cube(1).toCSG().movex(20).movez(3);
+
+        List<Polygon> slice = new MeshSlice().slice(sphere.union(island), new Transform().movez(3), 0);
+
+        assertEquals(2, slice.size());
+        // a circle of radius 4, a little smaller for the facets
+        double circle = Math.PI * 16;
+        assertTrue(area(slice.get(0)) < circle && area(slice.get(0)) > circle * 0.98);
+        assertEquals(1, area(slice.get(1)), 1e-9);
+        assertEquals(20, slice.get(1).getBounds().getCenter().x, 1e-9);
+    }
+
+    @Test
+    public void sliceStack_ShouldCutEveryLayerOnce() {
+        CSG part = new Cube(10, 10, 10.5).toCSG().toZMin().difference(new Cube(4, 4, 100).toCSG());
+
+        List<List<Polygon>> layers = new MeshSlice().sliceStack(part, new Transform(), 1);
+
+        assertEquals(11, layers.size());
+        for (int i = 0; i < layers.size(); i++) {
+            List<Polygon> layer = layers.get(i);
+            assertEquals(2, layer.size());
+            assertEquals(100, area(layer.get(0)), 1e-9);
+            assertEquals(-16, area(layer.get(1)), 1e-9);
+            assertEquals(i, layer.get(0).vertices.get(0).pos.z, 1e-12);
+        }
+    }
+
+    @Test
+    public void sliceStack_ShouldMatchSingleSlices() {
+        CSG part = new Sphere(5, 32, 16).toCSG().union(new Cylinder(2, 12).toCSG().movex(4));
+        Transform base = new Transform().rotx(30).movez(-6);
+
+        List<List<Polygon>> layers = new MeshSlice().sliceStack(part, base, 0.75);
+
+        assertTrue(layers.size() > 10);
+        // the first and last layer are cut in the middle of their partial fill
+        for (int i = 1; i < layers.size() - 1; i++) {
+            double bottom = layers.get(i).get(0).vertices.get(0).pos.z;
+            Transform plane = new Transform().apply(base).apply(new Transform().movez(bottom + 0.375));
+            List<Polygon> single = new MeshSlice().slice(part, plane, 0);
+            assertEquals(single.size(), layers.get(i).size());
+            for (int p = 0; p < single.size(); p++) {
+                assertEquals(area(single.get(p)), area(layers.get(i).get(p)), 1e-9);
+            }
+        }
+    }
+}
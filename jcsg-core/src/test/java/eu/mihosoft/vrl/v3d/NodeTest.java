@@ -0,0 +1,103 @@
+package eu.mihosoft.vrl.v3d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NodeTest {
+
+    @AfterEach
+    public void resetDefaults() {
+        CSG.setDefaultSplitPlaneType(CSG.SplitPlaneType.FIRST_POLYGON);
+        CSG.setDefaultParallelBSP(false);
+    }
+
+    @Test
+    public void difference_WithBalancedSplitPlanesShouldMatchDefaultBounds() {
+        CSG sphere = new Sphere(10, 32, 16).toCSG();
+        CSG cylinder = new Cylinder(4, 30).toCSG().movez(-15);
+
+        CSG.setDefaultSplitPlaneType(CSG.SplitPlaneType.FIRST_POLYGON);
+        CSG expected = sphere.difference(cylinder);
+
+        CSG.setDefaultSplitPlaneType(CSG.SplitPlaneType.BALANCED);
+        CSG result = sphere.difference(cylinder);
+
+        assertFalse(result.getPolygons().isEmpty());
+        assertEquals(expected.getMinX(), result.getMinX(), 1e-6);
+        assertEquals(expected.getMaxX(), result.getMaxX(), 1e-6);
+        assertEquals(expected.getMinY(), result.getMinY(), 1e-6);
+        assertEquals(expected.getMaxY(), result.getMaxY(), 1e-6);
+        assertEquals(expected.getMinZ(), result.getMinZ(), 1e-6);
+        assertEquals(expected.getMaxZ(), result.getMaxZ(), 1e-6);
+    }
+
+    @Test
+    public void build_WithBalancedSplitPlanesShouldBuildShallowerTree() {
+        // a row of separate cubes: every face splits nothing, but only the faces
+        // in the middle of the row divide the rest evenly
+        List<Polygon> polygons = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            polygons.addAll(new Cube(1).toCSG().movex(2 * i).getPolygons());
+        }
+
+        CSG.setDefaultSplitPlaneType(CSG.SplitPlaneType.FIRST_POLYGON);
+        Node first = new Node(polygons);
+
+        CSG.setDefaultSplitPlaneType(CSG.SplitPlaneType.BALANCED);
+        Node balanced = new Node(polygons);
+
+        assertEquals(polygons.size(), first.allPolygons().size());
+        assertEquals(polygons.size(), balanced.allPolygons().size());
+        assertTrue(balanced.depth() * 4 < first.depth(),
+                "balanced depth " + balanced.depth() + ", first polygon depth " + first.depth());
+    }
+
+    @Test
+    public void build_DeepTreeShouldNotDependOnThreadStackSize() throws Throwable {
+        // every face of a convex mesh lies behind every other face, so the tree
+        // degenerates into a chain as deep as the polygon count
+        CSG sphere = new Sphere(10, 64, 32).toCSG();
+        int count = sphere.getPolygons().size();
+        Throwable[] failure = new Throwable[1];
+
+        Thread worker = new Thread(null, () -> {
+            try {
+                Node node = new Node(sphere.clone().getPolygons());
+                Node copy = node.clone();
+                copy.invert();
+                copy.clipTo(node);
+
+                assertEquals(count, node.allPolygons().size());
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "deep-bsp", 64 * 1024);
+        worker.start();
+        worker.join();
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    @Test
+    public void union_WithParallelBSPShouldMatchSequentialResult() {
+        CSG a = new Sphere(10, 48, 24).toCSG().setOptType(CSG.OptType.NONE);
+        CSG b = new Sphere(10, 48, 24).toCSG().movex(8);
+
+        CSG expected = a.union(b);
+        CSG result = a.clone().setParallelBSP(true).union(b);
+
+        assertEquals(expected.getPolygons().size(), result.getPolygons().size());
+        for (int i = 0; i < expected.getPolygons().size(); i++) {
+            assertEquals(expected.getPolygons().get(i).getPoints(), result.getPolygons().get(i).getPoints());
+        }
+    }
+}
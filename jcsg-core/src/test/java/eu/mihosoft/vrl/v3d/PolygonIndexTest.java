@@ -0,0 +1,56 @@
+package eu.mihosoft.vrl.v3d;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PolygonIndexTest {
+
+    @Test
+    public void partition_ShouldMatchLinearBoundsTest() {
+        CSG sphere = new Sphere(10, 64, 32).toCSG();
+        Bounds query = new Cube(6).toCSG().move(8, 2, 1).getBounds();
+
+        List<Polygon> inner = new ArrayList<>();
+        List<Polygon> outer = new ArrayList<>();
+        new PolygonIndex(sphere.getPolygons()).partition(query, inner, outer);
+
+        List<Polygon> expectedInner = new ArrayList<>();
+        List<Polygon> expectedOuter = new ArrayList<>();
+        for (Polygon p : sphere.getPolygons()) {
+            (query.intersects(p.getBounds()) ? expectedInner : expectedOuter).add(p);
+        }
+        assertFalse(expectedInner.isEmpty());
+        assertEquals(expectedInner, inner);
+        assertEquals(expectedOuter, outer);
+    }
+
+    @Test
+    public void getPolygonIndex_ShouldBeRebuiltWhenPolygonsAreReplaced() {
+        CSG cube = new Cube(10).toCSG();
+        PolygonIndex index = cube.getPolygonIndex();
+        assertSame(index, cube.getPolygonIndex());
+
+        cube.setPolygons(new ArrayList<>(cube.getPolygons()));
+        assertNotSame(index, cube.getPolygonIndex());
+        assertEquals(6, cube.getPolygonIndex().size());
+    }
+
+    @Test
+    public void touching_ShouldRejectNestedSurfacesOnlyWhenDisjoint() {
+        CSG shell = new Sphere(20, 32, 16).toCSG().difference(new Sphere(18, 32, 16).toCSG());
+        CSG inCavity = new Cube(4).toCSG();
+        CSG crossing = new Cube(4).toCSG().movex(19);
+
+        assertFalse(shell.touching(inCavity));
+        assertTrue(shell.touching(crossing));
+        assertTrue(new Cube(40).toCSG().touching(inCavity));
+    }
+}
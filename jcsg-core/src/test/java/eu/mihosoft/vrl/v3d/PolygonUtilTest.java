@@ -0,0 +1,83 @@
+package eu.mihosoft.vrl.v3d;
+
+import eu.mihosoft.vrl.v3d.ext.org.poly2tri.PolygonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PolygonUtilTest {
+
+    private static double area(Polygon p) {
+        Vector3d sum = new Vector3d(0, 0, 0);
+        Vector3d a = p.vertices.get(0).pos;
+        for (int i = 1; i < p.vertices.size() - 1; i++) {
+            sum = sum.plus(p.vertices.get(i).pos.minus(a).cross(p.vertices.get(i + 1).pos.minus(a)));
+        }
+        return sum.dot(p.plane.getNormal()) / 2;
+    }
+
+    private static void assertSameSurface(Polygon polygon, List<Polygon> triangles) {
+        double area = 0;
+        for (Polygon t : triangles) {
+            assertEquals(3, t.vertices.size());
+            double a = area(t);
+            assertTrue(a > 0, "triangle is reversed or degenerate");
+            assertTrue(t.plane.getNormal().dot(polygon.plane.getNormal()) > 1 - 1e-9);
+            area += a;
+        }
+        assertEquals(area(polygon), area, 1e-9);
+    }
+
+    @Test
+    public void triangulate_ShouldFanConvexPolygon() {
+        List<Vector3d> points = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            double angle = Math.PI * 2 * i / 6;
+            points.add(new Vector3d(Math.cos(angle), Math.sin(angle), 0));
+        }
+        Transform tilt = new Transform().rotX(37).rotY(-112).translate(3, 4, 5);
+        Polygon hexagon = Polygon.fromPoints(points).transformed(tilt);
+
+        List<Polygon> triangles = PolygonUtil.triangulate(hexagon);
+
+        assertEquals(4, triangles.size());
+        assertSameSurface(hexagon, triangles);
+        for (Polygon t : triangles) {
+            assertEquals(hexagon.vertices.get(0).pos, t.vertices.get(0).pos);
+        }
+    }
+
+    @Test
+    public void triangulate_ShouldSplitConcavePolygon() {
+        Polygon l = Polygon.fromPoints(new Vector3d(0, 0, 0), new Vector3d(0, 0, 2), new Vector3d(0, 1, 2),
+                new Vector3d(0, 1, 1), new Vector3d(0, 2, 1), new Vector3d(0, 2, 0));
+        // a colinear vertex is no corner either
+        Polygon square = Polygon.fromPoints(new Vector3d(0, 0, 0), new Vector3d(1, 0, 0), new Vector3d(2, 0, 0),
+                new Vector3d(2, 2, 0), new Vector3d(0, 2, 0));
+
+        assertSameSurface(l, PolygonUtil.triangulate(l));
+        assertSameSurface(square, PolygonUtil.triangulate(square));
+    }
+
+    @Test
+    public void triangulate_ShouldTriangulateLargeCSGInParallel() {
+        CSG csg = new Cylinder(5, 5, 10, 120).toCSG().union(new Cube(4).toCSG().movez(8));
+        double area = 0;
+        for (Polygon p : csg.getPolygons()) {
+            area += area(p);
+        }
+
+        csg.triangulate();
+
+        double triangulated = 0;
+        for (Polygon p : csg.getPolygons()) {
+            assertEquals(3, p.vertices.size());
+            triangulated += area(p);
+        }
+        assertEquals(area, triangulated, 1e-6);
+    }
+}
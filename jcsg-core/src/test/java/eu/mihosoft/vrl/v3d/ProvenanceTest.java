@@ -0,0 +1,101 @@
+package eu.mihosoft.vrl.v3d;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProvenanceTest {
+
+    @Test
+    public void setProvenanceLevel_ShouldSkipCaptureWhenOff() {
+        CSG.ProvenanceLevel level = CSG.getProvenanceLevel();
+        try {
+            CSG.setProvenanceLevel(CSG.ProvenanceLevel.OFF);
+            assertFalse(CSG.isUseStackTraces());
+            CSG.resetProvenanceCounters();
+
+            CSG cube = new Cube(1).toCSG().addCreationEventString("part.groovy:3");
+
+            assertTrue(cube.getCreationEventStackTraceList().isEmpty());
+            assertEquals(0, CSG.getProvenanceCaptureCount());
+        } finally {
+            CSG.setProvenanceLevel(level);
+        }
+    }
+
+    @Test
+    public void capture_ShouldCountEveryNewCSG() {
+        CSG.ProvenanceLevel level = CSG.getProvenanceLevel();
+        try {
+            CSG.setProvenanceLevel(CSG.ProvenanceLevel.FIRST_FRAME);
+            CSG.resetProvenanceCounters();
+
+            new Cube(1).toCSG();
+
+            assertTrue(CSG.getProvenanceCaptureCount() > 0);
+            assertTrue(CSG.getProvenanceCaptureNanos() > 0);
+        } finally {
+            CSG.setProvenanceLevel(level);
+        }
+    }
+
+    @Test
+    public void setUseStackTraces_ShouldKeepLevelWhenTurnedOn() {
+        CSG.ProvenanceLevel level = CSG.getProvenanceLevel();
+        try {
+            CSG.setProvenanceLevel(CSG.ProvenanceLevel.FIRST_FRAME);
+            CSG.setUseStackTraces(true);
+            assertEquals(CSG.ProvenanceLevel.FIRST_FRAME, CSG.getProvenanceLevel());
+            CSG.setUseStackTraces(false);
+            CSG.setUseStackTraces(true);
+            assertEquals(CSG.ProvenanceLevel.FULL, CSG.getProvenanceLevel());
+        } finally {
+            CSG.setProvenanceLevel(level);
+        }
+    }
+
+    @Test
+    public void addCreationEventString_ShouldDropDuplicateLines() {
+        CSG cube = new Cube(1).toCSG();
+        int before = cube.getCreationEventStackTraceList().size();
+        for (int i = 0; i < 100; i++) {
+            cube.addCreationEventString("part.groovy:" + (i % 20));
+        }
+
+        assertEquals(before + 20, cube.getCreationEventStackTraceList().size());
+        CSG other = new Cube(1).toCSG().addCreationEventString(new String("part.groovy:7"));
+        cube.historySync(other);
+        assertEquals(before + 20, cube.getCreationEventStackTraceList().size());
+    }
+
+    @Test
+    public void addCreationEventString_ShouldSeeChangesOfTheReturnedList() {
+        CSG cube = new Cube(1).toCSG();
+        for (int i = 0; i < 20; i++) {
+            cube.addCreationEventString("part.groovy:" + i);
+        }
+
+        cube.getCreationEventStackTraceList().clear();
+        cube.addCreationEventString("part.groovy:3");
+        assertEquals(1, cube.getCreationEventStackTraceList().size());
+
+        cube.getCreationEventStackTraceList().add("part.groovy:4");
+        for (int i = 0; i < 20; i++) {
+            cube.addCreationEventString("part.groovy:" + i);
+        }
+        assertEquals(20, cube.getCreationEventStackTraceList().size());
+    }
+
+    @Test
+    public void line_ShouldOnlyKeepScriptFrames() {
+        assertNull(Provenance.line(new StackTraceElement("A", "b", "A.java", 12)));
+        assertNull(Provenance.line(new StackTraceElement("Script1", "run", "part.groovy", -1)));
+        String line = Provenance.line(new StackTraceElement("Script1", "run", "part.groovy", 12));
+        assertEquals("part.groovy:12", line);
+        assertSame(line, Provenance.line(new StackTraceElement("Script1", "run", "part.groovy", 12)));
+    }
+}
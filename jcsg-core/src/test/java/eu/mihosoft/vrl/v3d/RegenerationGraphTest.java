@@ -0,0 +1,78 @@
+package eu.mihosoft.vrl.v3d;
+
+import eu.mihosoft.vrl.v3d.parametrics.CSGDatabase;
+import eu.mihosoft.vrl.v3d.parametrics.LengthParameter;
+import eu.mihosoft.vrl.v3d.parametrics.RegenerationGraph;
+import eu.mihosoft.vrl.v3d.parametrics.RegenerationGraph.Node;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RegenerationGraphTest {
+
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void useTemporaryDatabase() {
+        CSGDatabase.setDbFile(new File(tempDir.toFile(), "CSGdatabase.json"));
+    }
+
+    @Test
+    public void get_ShouldOnlyRecomputeNodesReadingTheChangedParameter() {
+        AtomicInteger blockBuilds = new AtomicInteger();
+        AtomicInteger holeBuilds = new AtomicInteger();
+        AtomicInteger cuts = new AtomicInteger();
+        RegenerationGraph graph = new RegenerationGraph();
+        Node block = graph.source("block", () -> {
+            blockBuilds.incrementAndGet();
+            LengthParameter width = new LengthParameter("graphTest.width", 20.0, new ArrayList<>());
+            return new Cube(width.getMM()).toCSG();
+        });
+        Node hole = graph.source("hole", () -> {
+            holeBuilds.incrementAndGet();
+            LengthParameter diameter = new LengthParameter("graphTest.diameter", 5.0, new ArrayList<>());
+            return new Cylinder(diameter.getMM() / 2, 40).toCSG().movez(-20);
+        });
+        Node part = graph.operation("part", csgs -> {
+            cuts.incrementAndGet();
+            return csgs.get(0).difference(csgs.get(1));
+        }, block, hole);
+
+        CSG first = graph.get(part);
+        CSG blockCSG = graph.get(block);
+        assertEquals(Collections.singleton("graphTest.width"), block.getParameterKeys());
+        assertEquals(Collections.singleton("graphTest.diameter"), hole.getParameterKeys());
+        assertFalse(part.isDirty());
+
+        CSGDatabase.get("graphTest.diameter").setMM(8);
+        assertTrue(hole.isDirty());
+        assertTrue(part.isDirty());
+        assertFalse(block.isDirty());
+
+        CSG second = graph.get(part);
+        assertEquals(1, blockBuilds.get());
+        assertEquals(2, holeBuilds.get());
+        assertEquals(2, cuts.get());
+        assertSame(blockCSG, graph.get(block));
+        assertTrue(second.getBounds().getMax().x == first.getBounds().getMax().x);
+
+        // back to the first value, everything comes from the cache
+        CSGDatabase.get("graphTest.diameter").setMM(5);
+        assertSame(first, graph.get(part));
+        assertEquals(2, holeBuilds.get());
+        assertEquals(2, cuts.get());
+        graph.dispose();
+    }
+}
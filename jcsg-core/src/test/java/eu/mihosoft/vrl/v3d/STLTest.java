@@ -0,0 +1,162 @@
+package eu.mihosoft.vrl.v3d;
+
+import eu.mihosoft.vrl.v3d.ext.imagej.STLLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STLTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void file_ShouldLoadAsciiExport() throws IOException {
+        CSG sphere = new Sphere(10, 16, 8).toCSG().triangulate();
+        Path file = tempDir.resolve("sphere.stl");
+        Files.write(file, sphere.toStlString().getBytes(StandardCharsets.US_ASCII));
+
+        CSG loaded = STL.file(file);
+
+        assertEquals(sphere.getPolygons().size(), loaded.getPolygons().size());
+        assertEquals(sphere.getBounds().getMin(), loaded.getBounds().getMin());
+        assertEquals(sphere.getBounds().getMax(), loaded.getBounds().getMax());
+    }
+
+    @Test
+    public void parse_ShouldReadBinaryFileWithSolidHeader() throws IOException {
+        int triangles = 3000;
+        ByteBuffer buffer = ByteBuffer.allocate(84 + 50 * triangles).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("solid binary".getBytes(StandardCharsets.US_ASCII));
+        buffer.position(80);
+        buffer.putInt(triangles);
+        for (int t = 0; t < triangles; t++) {
+            buffer.putFloat(0).putFloat(0).putFloat(1);
+            buffer.putFloat(t).putFloat(0).putFloat(0);
+            buffer.putFloat(t + 1).putFloat(0).putFloat(0);
+            buffer.putFloat(t).putFloat(0.5f).putFloat(0);
+            buffer.putShort((short) 0);
+        }
+        Path file = tempDir.resolve("binary.stl");
+        Files.write(file, buffer.array());
+
+        List<Vector3d> corners = new ArrayList<>();
+        int read = new STLLoader().parse(file.toFile(), (normal, a, b, c) -> {
+            assertEquals(new Vector3d(0, 0, 1), normal);
+            corners.add(a);
+            corners.add(c);
+        });
+
+        assertEquals(triangles, read);
+        assertEquals(new Vector3d(2999, 0, 0), corners.get(2 * 2999));
+        assertEquals(new Vector3d(2999, 0.5, 0), corners.get(2 * 2999 + 1));
+    }
+
+    @Test
+    public void parse_ShouldReadFirstNormalAfterNamelessSolid() throws IOException {
+        for (String newline : new String[] { "\n", "\r\n" }) {
+            String stl = "solid" + newline + "facet normal 0 0 1" + newline + "outer loop" + newline
+                    + "vertex 0 0 0" + newline + "vertex 1 0 0" + newline + "vertex 0 1 0" + newline + "endloop"
+                    + newline + "endfacet" + newline + "endsolid" + newline;
+            Path file = tempDir.resolve("nameless.stl");
+            Files.write(file, stl.getBytes(StandardCharsets.US_ASCII));
+
+            List<Vector3d> normals = new ArrayList<>();
+            int read = new STLLoader().parse(file.toFile(), (normal, a, b, c) -> normals.add(normal));
+
+            assertEquals(1, read);
+            assertEquals(new Vector3d(0, 0, 1), normals.get(0));
+        }
+    }
+
+    @Test
+    public void parse_ShouldReadAsciiNumbersLikeParseDouble() throws IOException {
+        String[] numbers = { "1", "-2.5", "3.000000e+01", "-1.234567890123456789e-3", "0.1", "1E300", "+7.25e-5",
+                "123456789012345678" };
+        StringBuilder sb = new StringBuilder("solid vertex\n");
+        sb.append(" facet normal 0 0 1\n  outer loop\n");
+        for (int i = 0; i < 9; i++) {
+            sb.append("   vertex ").append(numbers[i % numbers.length]).append(' ')
+                    .append(numbers[(i + 3) % numbers.length]).append(' ')
+                    .append(numbers[(i + 5) % numbers.length]).append('\n');
+        }
+        sb.append("  endloop\n endfacet\nendsolid vertex\n");
+        Path file = tempDir.resolve("numbers.stl");
+        Files.write(file, sb.toString().getBytes(StandardCharsets.US_ASCII));
+
+        List<Vector3d> vertices = new STLLoader().parse(file.toFile());
+
+        assertEquals(9, vertices.size());
+        for (int i = 0; i < 9; i++) {
+            Vector3d v = vertices.get(i);
+            assertEquals(Double.parseDouble(numbers[i % numbers.length]), v.x);
+            assertEquals(Double.parseDouble(numbers[(i + 3) % numbers.length]), v.y);
+            assertEquals(Double.parseDouble(numbers[(i + 5) % numbers.length]), v.z);
+        }
+    }
+
+    @Test
+    public void toStl_ShouldMatchLinesOfToStlString() throws IOException {
+        CSG sphere = new Sphere(7.3, 16, 8).toCSG().move(1.1, -2.7, 3.3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        sphere.toStl(out);
+
+        String[] expected = sphere.toStlString().split("\\s+");
+        String[] actual = new String(out.toByteArray(), StandardCharsets.US_ASCII).split("\\s+");
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (Character.isLetter(expected[i].charAt(0))) {
+                assertEquals(expected[i], actual[i]);
+            } else {
+                assertEquals(Double.parseDouble(expected[i]), Double.parseDouble(actual[i]), 1.0e-12);
+            }
+        }
+    }
+
+    @Test
+    public void toStl_ShouldWriteCoordinatesThatParseBackToTheSameValues() throws IOException {
+        CSG sphere = new Sphere(7.3, 32, 16).toCSG().move(1.1, -2.7, 3.3);
+        Path streamed = tempDir.resolve("streamed.stl");
+        Path built = tempDir.resolve("built.stl");
+        try (OutputStream out = Files.newOutputStream(streamed)) {
+            sphere.toStl(out);
+        }
+        Files.write(built, sphere.toStlString().getBytes(StandardCharsets.US_ASCII));
+
+        List<Vector3d> expected = new STLLoader().parse(built.toFile());
+        List<Vector3d> actual = new STLLoader().parse(streamed.toFile());
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(expected.get(i).minus(actual.get(i)).magnitude() < 1.0e-12);
+        }
+    }
+
+    @Test
+    public void toBinaryStl_ShouldLoadBackAsBinary() throws IOException {
+        CSG sphere = new Sphere(10, 32, 16).toCSG().triangulate();
+        Path file = tempDir.resolve("binary.stl");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            sphere.toBinaryStl(out);
+        }
+
+        assertEquals(84 + 50 * sphere.getPolygons().size(), Files.size(file));
+        CSG loaded = STL.file(file);
+        assertEquals(sphere.getPolygons().size(), loaded.getPolygons().size());
+        assertTrue(sphere.getBounds().getMax().minus(loaded.getBounds().getMax()).magnitude() < 1.0e-5);
+    }
+}
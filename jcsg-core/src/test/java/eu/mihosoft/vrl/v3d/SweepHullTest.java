@@ -0,0 +1,70 @@
+package eu.mihosoft.vrl.v3d;
+
+import eu.mihosoft.vrl.v3d.ext.quickhull3d.HullUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SweepHullTest {
+
+    private static void assertSameCSG(CSG expected, CSG actual) {
+        List<Polygon> e = expected.getPolygons();
+        List<Polygon> a = actual.getPolygons();
+        assertEquals(e.size(), a.size());
+        for (int i = 0; i < e.size(); i++) {
+            assertEquals(e.get(i).vertices.size(), a.get(i).vertices.size());
+            for (int k = 0; k < e.get(i).vertices.size(); k++) {
+                Vector3d ev = e.get(i).vertices.get(k).pos;
+                Vector3d av = a.get(i).vertices.get(k).pos;
+                assertEquals(ev.x, av.x, 0);
+                assertEquals(ev.y, av.y, 0);
+                assertEquals(ev.z, av.z, 0);
+            }
+        }
+    }
+
+    @Test
+    public void segments_ShouldMatchHullsOfTransformedProfiles() {
+        CSG profile = new Cylinder(2, 1, 12).toCSG();
+        ArrayList<Transform> stations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Transform t = new Transform().rotZ(i * 7).movex(i * 0.5).rotY(i * 3);
+            if (i % 5 == 0) {
+                t.scaleX(-1);
+            }
+            stations.add(t);
+        }
+
+        ArrayList<CSG> segments = SweepHull.segments(profile, stations);
+
+        assertEquals(stations.size() - 1, segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            CSG expected = HullUtil.hull(profile.transformed(stations.get(i)),
+                    profile.transformed(stations.get(i + 1)));
+            assertSameCSG(expected, segments.get(i));
+        }
+    }
+
+    @Test
+    public void revolve_ShouldMatchSequentialHulls() {
+        CSG slice = new Cube(1, 1, 2).toCSG();
+        double radius = 5;
+        double increment = 90.0 / 6;
+
+        ArrayList<CSG> parts = Extrude.revolve(slice, radius, 90, 6);
+
+        List<CSG> expected = new ArrayList<>();
+        CSG profile = slice.movey(radius);
+        for (double i = 0; i < (90 + increment); i += increment) {
+            expected.add(profile.rotz(i));
+        }
+        assertEquals(expected.size(), parts.size());
+        for (int i = 0; i < expected.size() - 1; i++) {
+            assertSameCSG(CSG.hullAll(expected.get(i), expected.get(i + 1)), parts.get(i));
+        }
+        assertSameCSG(expected.get(expected.size() - 1), parts.get(parts.size() - 1));
+    }
+}
@@ -8,6 +8,7 @@ import java.util.List;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TextTest {
 
@@ -21,6 +22,46 @@ public class TextTest {
 				text.toCSG().triangulate().toStlString());
 	}
 
+	@Test
+	public void text_ShouldComposeRepeatedGlyphsFromCache() {
+		Font font = new Font("Arial", Font.PLAIN, 20);
+		TextExtrude.clearGlyphCache();
+		List<CSG> text = TextExtrude.text(2.0, "8o8", font);
+		List<CSG> again = TextExtrude.text(2.0, "8o8", font);
+
+		// 8 has two holes, o one, every glyph is a single section
+		assertEquals(3, text.size());
+		assertEquals(text.get(0).getPolygons().size(), text.get(2).getPolygons().size());
+		assertEquals(text.get(0).getTotalZ(), text.get(2).getTotalZ(), 1e-9);
+		assertEquals(text.get(0).getTotalX(), text.get(2).getTotalX(), 1e-4);
+		assertTrue(text.get(2).getMinX() > text.get(1).getMaxX());
+		for (int i = 0; i < text.size(); i++) {
+			assertEquals(text.get(i).getMinX(), again.get(i).getMinX(), 0);
+			assertEquals(text.get(i).getPolygons().size(), again.get(i).getPolygons().size());
+		}
+	}
+
+	@Test
+	public void text_ShouldMatchWithoutCache() {
+		Font font = new Font("Arial", Font.PLAIN, 20);
+		int size = TextExtrude.getGlyphCacheSize();
+		try {
+			TextExtrude.setGlyphCacheSize(0);
+			List<CSG> uncached = TextExtrude.text(1.5, "Ab", font);
+			TextExtrude.setGlyphCacheSize(size);
+			TextExtrude.text(1.5, "Ab", font);
+			List<CSG> cached = TextExtrude.text(1.5, "Ab", font);
+			assertEquals(uncached.size(), cached.size());
+			for (int i = 0; i < cached.size(); i++) {
+				assertEquals(uncached.get(i).getPolygons().size(), cached.get(i).getPolygons().size());
+				assertEquals(uncached.get(i).getMinX(), cached.get(i).getMinX(), 0);
+				assertEquals(uncached.get(i).getMaxY(), cached.get(i).getMaxY(), 0);
+			}
+		} finally {
+			TextExtrude.setGlyphCacheSize(size);
+		}
+	}
+
 	@Test
 	public void textTriangulateShouldCreateSixFaces() {
 		CSG text = new Text3d("-", 1).toCSG().triangulate();
@@ -0,0 +1,96 @@
+package eu.mihosoft.vrl.v3d;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class VertexIndexTest {
+
+    @Test
+    public void weld_ShouldMatchIndexOfOnVertexList() {
+        Random random = new Random(42);
+        double epsilon = 1.0e-3;
+        List<Vector3d> positions = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0 && random.nextInt(3) == 0) {
+                // a near duplicate of an earlier position, sometimes just outside
+                Vector3d p = positions.get(random.nextInt(positions.size()));
+                double d = epsilon * (random.nextDouble() * 1.2 - 0.6);
+                positions.add(new Vector3d(p.x + d, p.y - d, p.z + d / 2));
+            } else {
+                positions.add(new Vector3d(random.nextInt(20) * 0.01, random.nextInt(20) * 0.01,
+                        random.nextInt(20) * 0.01));
+            }
+        }
+
+        VertexIndex index = new VertexIndex(epsilon, 4);
+        List<Vector3d> distinct = new ArrayList<>();
+        for (Vector3d p : positions) {
+            int expected = -1;
+            for (int i = 0; i < distinct.size() && expected < 0; i++) {
+                if (distinct.get(i).test(p, epsilon)) {
+                    expected = i;
+                }
+            }
+            if (expected < 0) {
+                expected = distinct.size();
+                distinct.add(p);
+            }
+            assertEquals(expected, index.weld(p));
+        }
+        assertEquals(distinct.size(), index.size());
+        assertEquals(distinct.get(7).y, index.get(7, 1));
+    }
+
+    @Test
+    public void indexOfCloserThan_ShouldMatchDistanceScan() {
+        Random random = new Random(7);
+        double epsilon = 1.0e-3;
+        VertexIndex index = new VertexIndex(epsilon, 4);
+        List<Vector3d> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Vector3d p = new Vector3d(random.nextInt(10) * 0.001 + random.nextDouble() * 0.001,
+                    random.nextInt(10) * 0.001, random.nextDouble() * 0.002);
+            int expected = -1;
+            for (int j = 0; j < points.size() && expected < 0; j++) {
+                if (points.get(j).minus(p).magnitude() < epsilon) {
+                    expected = j;
+                }
+            }
+            assertEquals(expected, index.indexOfCloserThan(p, epsilon));
+            points.add(p);
+            index.add(p.x, p.y, p.z);
+        }
+    }
+
+    @Test
+    public void toObj_ShouldMatchToObjString() throws IOException {
+        CSG csg = new Cube(10).toCSG().difference(new Sphere(6, 16, 8).toCSG());
+        csg.addDatumReference(new Transform().movex(3));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        csg.toObj(out);
+
+        String obj = csg.toObjString();
+        assertEquals(obj, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        long vertexLines = Arrays.stream(obj.split("\n")).filter(l -> l.startsWith("v ")).count();
+        List<Vertex> distinct = new ArrayList<>();
+        for (Polygon p : csg.getPolygons()) {
+            for (Vertex v : p.vertices) {
+                if (!distinct.contains(v)) {
+                    distinct.add(v);
+                }
+            }
+        }
+        // the two datum reference points follow the mesh vertices
+        assertEquals(distinct.size() + 2, vertexLines);
+    }
+}
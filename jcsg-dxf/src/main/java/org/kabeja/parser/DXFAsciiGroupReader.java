@@ -0,0 +1,326 @@
+/*
+ Copyright 2005 Simon Mieth
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.kabeja.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Reads the groups of an ASCII DXF stream directly from a byte buffer.
+ * <p>
+ * Lines are split and trimmed on the bytes, the group code is parsed without
+ * creating a String and only the value is decoded. Short values that repeat
+ * all over a drawing, like entity types, layer names and flags, are taken
+ * from a small cache instead of being decoded again. The groups are the same
+ * as reading the stream line by line with a {@link java.io.BufferedReader}
+ * and trimming every line.
+ * <p>
+ * The charset must encode line breaks, blanks and digits like ASCII, see
+ * {@link #supports(Charset)}.
+ *
+ */
+public class DXFAsciiGroupReader implements DXFGroupReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CACHE_SIZE = 1024;
+    private static final int MAX_CACHED_LENGTH = 32;
+    private static final String ASCII_PROBE = "\r\n\t 0123456789+-.EOFSECTION";
+    private final InputStream in;
+    private final Charset charset;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean skipLineFeed;
+    private boolean start = true;
+
+    // the current line
+    private int lineStart;
+    private int lineEnd;
+    private int groupCode;
+    private DXFValue value;
+    private final String[] cache = new String[CACHE_SIZE];
+
+    public DXFAsciiGroupReader(InputStream in, Charset charset) {
+        if (!supports(charset)) {
+            throw new IllegalArgumentException("Not an ASCII compatible charset: " +
+                charset);
+        }
+
+        this.in = in;
+        this.charset = charset;
+    }
+
+    /**
+     * Checks whether a charset encodes line breaks, blanks and digits like
+     * ASCII and never uses those bytes inside other characters, so the lines
+     * of a DXF stream can be split on the bytes.
+     * @param charset the charset
+     * @return true if the charset can be read by this reader
+     */
+    public static boolean supports(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+
+        try {
+            ByteBuffer encoded = charset.newEncoder()
+                                        .encode(CharBuffer.wrap(ASCII_PROBE));
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+
+            return Arrays.equals(bytes,
+                ASCII_PROBE.getBytes(StandardCharsets.US_ASCII));
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    public boolean next() throws IOException {
+        if (!readLine()) {
+            return false;
+        }
+
+        String invalidCode = null;
+
+        try {
+            groupCode = parseGroupCode();
+        } catch (NumberFormatException e) {
+            // like the line reader, fail only if the group has a value
+            invalidCode = e.getMessage();
+        }
+
+        if (!readLine()) {
+            return false;
+        }
+
+        if (invalidCode != null) {
+            throw new NumberFormatException(invalidCode);
+        }
+
+        value = new DXFValue(decodeValue());
+
+        return true;
+    }
+
+    public int getGroupCode() {
+        return groupCode;
+    }
+
+    public DXFValue getValue() {
+        return value;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Finds the next line, the line break is not part of the line.
+     */
+    private boolean readLine() throws IOException {
+        if (skipLineFeed) {
+            skipLineFeed = false;
+
+            if ((position == limit) && !eof) {
+                fill();
+            }
+
+            if ((position < limit) && (buffer[position] == '\n')) {
+                position++;
+            }
+        }
+
+        int scan = position;
+
+        while (true) {
+            for (; scan < limit; scan++) {
+                byte b = buffer[scan];
+
+                if ((b == '\n') || (b == '\r')) {
+                    lineStart = position;
+                    lineEnd = scan;
+                    position = scan + 1;
+                    skipLineFeed = b == '\r';
+
+                    return true;
+                }
+            }
+
+            if (eof) {
+                if (position < limit) {
+                    lineStart = position;
+                    lineEnd = limit;
+                    position = limit;
+
+                    return true;
+                }
+
+                return false;
+            }
+
+            int scanned = scan - position;
+            fill();
+            scan = position + scanned;
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads more.
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.length) {
+            // a line longer than the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+
+        if (read < 0) {
+            eof = true;
+        } else {
+            if (start) {
+                start = false;
+
+                // skip a UTF-8 byte order mark
+                if ((read >= 3) && ((buffer[0] & 0xff) == 0xef) &&
+                        ((buffer[1] & 0xff) == 0xbb) &&
+                        ((buffer[2] & 0xff) == 0xbf)) {
+                    position = 3;
+                }
+            }
+
+            limit += read;
+        }
+    }
+
+    private void trimLine() {
+        while ((lineStart < lineEnd) && ((buffer[lineStart] & 0xff) <= ' ')) {
+            lineStart++;
+        }
+
+        while ((lineEnd > lineStart) && ((buffer[lineEnd - 1] & 0xff) <= ' ')) {
+            lineEnd--;
+        }
+    }
+
+    private int parseGroupCode() {
+        trimLine();
+
+        int i = lineStart;
+        boolean negative = false;
+
+        if ((i < lineEnd) && ((buffer[i] == '-') || (buffer[i] == '+'))) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+
+        if ((i == lineEnd) || ((lineEnd - i) > 9)) {
+            // empty or too long to parse without overflow checks
+            return Integer.parseInt(new String(buffer, lineStart,
+                    lineEnd - lineStart, charset));
+        }
+
+        int code = 0;
+
+        for (; i < lineEnd; i++) {
+            int digit = buffer[i] - '0';
+
+            if ((digit < 0) || (digit > 9)) {
+                throw new NumberFormatException("For input string: \"" +
+                    new String(buffer, lineStart, lineEnd - lineStart, charset) +
+                    "\"");
+            }
+
+            code = (code * 10) + digit;
+        }
+
+        return negative ? (-code) : code;
+    }
+
+    private String decodeValue() {
+        trimLine();
+
+        int length = lineEnd - lineStart;
+        boolean ascii = true;
+        int hash = 0;
+
+        for (int i = lineStart; i < lineEnd; i++) {
+            byte b = buffer[i];
+            ascii &= (b >= 0);
+            hash = (31 * hash) + b;
+        }
+
+        if (!ascii) {
+            return new String(buffer, lineStart, length, charset);
+        }
+
+        if ((length > MAX_CACHED_LENGTH) || !isCached(groupCode)) {
+            return new String(buffer, lineStart, length,
+                StandardCharsets.ISO_8859_1);
+        }
+
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String cached = cache[slot];
+
+        if ((cached != null) && matches(cached)) {
+            return cached;
+        }
+
+        cached = new String(buffer, lineStart, length,
+                StandardCharsets.ISO_8859_1);
+        cache[slot] = cached;
+
+        return cached;
+    }
+
+    private boolean matches(String s) {
+        if (s.length() != (lineEnd - lineStart)) {
+            return false;
+        }
+
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != buffer[lineStart + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Coordinates and handles rarely repeat, everything else is worth caching.
+     */
+    private static boolean isCached(int code) {
+        if ((code == 5) || (code == 105)) {
+            return false;
+        }
+
+        return !(((code >= 10) && (code <= 59)) ||
+        ((code >= 110) && (code <= 149)) || ((code >= 210) && (code <= 239)) ||
+        ((code >= 460) && (code <= 469)) || ((code >= 1010) && (code <= 1059)));
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ Copyright 2005 Simon Mieth
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.kabeja.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Reads the groups of a binary DXF stream.
+ * <p>
+ * A binary DXF starts with a sentinel, followed by the groups. The group
+ * codes are 2 byte little endian integers, or single bytes with 255 escaping
+ * a 2 byte code in files older than R13. The type of a value depends on its
+ * group code: strings are zero terminated, numbers are little endian, binary
+ * chunks have a length byte. Numbers and binary chunks are converted to the
+ * text they have in an ASCII DXF, so the section handlers work unchanged.
+ *
+ */
+public class DXFBinaryGroupReader implements DXFGroupReader {
+    public static final String SENTINEL = "AutoCAD Binary DXF\r\n\u001a\u0000";
+    private static final int SENTINEL_LENGTH = 22;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // value types
+    private static final int STRING = 0;
+    private static final int DOUBLE = 1;
+    private static final int INT16 = 2;
+    private static final int INT32 = 3;
+    private static final int INT64 = 4;
+    private static final int BOOLEAN = 5;
+    private static final int BINARY = 6;
+    private final InputStream in;
+    private final Charset charset;
+    private final boolean wideGroupCodes;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean end;
+    private int groupCode;
+    private DXFValue value;
+
+    /**
+     * @param in the stream, positioned at the sentinel
+     * @param charset the charset of the strings
+     * @throws IOException if the stream does not start with the sentinel
+     */
+    public DXFBinaryGroupReader(InputStream in, Charset charset)
+        throws IOException {
+        this.in = in;
+        this.charset = charset;
+
+        if (!ensure(SENTINEL_LENGTH) ||
+                !SENTINEL.equals(new String(buffer, 0, SENTINEL_LENGTH,
+                        StandardCharsets.ISO_8859_1))) {
+            throw new IOException("Not a binary DXF stream");
+        }
+
+        position = SENTINEL_LENGTH;
+
+        // the first group is 0/SECTION, its value starts right after a single
+        // byte code
+        wideGroupCodes = ensure(2) && (buffer[position + 1] == 0);
+    }
+
+    /**
+     * Checks whether a stream starts with the binary DXF sentinel, the stream
+     * is reset to its current position.
+     * @param in a stream that supports mark and reset
+     * @return true for a binary DXF stream
+     * @throws IOException
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        in.mark(SENTINEL_LENGTH);
+
+        try {
+            byte[] head = new byte[SENTINEL_LENGTH];
+            int n = 0;
+
+            while (n < SENTINEL_LENGTH) {
+                int read = in.read(head, n, SENTINEL_LENGTH - n);
+
+                if (read < 0) {
+                    return false;
+                }
+
+                n += read;
+            }
+
+            return SENTINEL.equals(new String(head, StandardCharsets.ISO_8859_1));
+        } finally {
+            in.reset();
+        }
+    }
+
+    public boolean next() throws IOException {
+        if (end) {
+            return false;
+        }
+
+        if (wideGroupCodes) {
+            if (!ensure(2)) {
+                return false;
+            }
+
+            groupCode = int16() & 0xffff;
+        } else {
+            if (!ensure(1)) {
+                return false;
+            }
+
+            groupCode = buffer[position++] & 0xff;
+
+            if (groupCode == 255) {
+                if (!ensure(2)) {
+                    return false;
+                }
+
+                groupCode = int16() & 0xffff;
+            }
+        }
+
+        String text = readValue(groupCode);
+
+        if (text == null) {
+            // truncated stream
+            return false;
+        }
+
+        value = new DXFValue(text);
+
+        // binary files may be padded after the end of file marker
+        end = (groupCode == 0) && "EOF".equals(text);
+
+        return true;
+    }
+
+    public int getGroupCode() {
+        return groupCode;
+    }
+
+    public DXFValue getValue() {
+        return value;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readValue(int code) throws IOException {
+        switch (typeOf(code)) {
+        case DOUBLE:
+
+            if (!ensure(8)) {
+                return null;
+            }
+
+            return Double.toString(Double.longBitsToDouble(int64()));
+
+        case INT16:
+
+            if (!ensure(2)) {
+                return null;
+            }
+
+            return Integer.toString(int16());
+
+        case INT32:
+
+            if (!ensure(4)) {
+                return null;
+            }
+
+            return Integer.toString(int32());
+
+        case INT64:
+
+            if (!ensure(8)) {
+                return null;
+            }
+
+            return Long.toString(int64());
+
+        case BOOLEAN:
+
+            if (!ensure(1)) {
+                return null;
+            }
+
+            return Integer.toString(buffer[position++] & 0xff);
+
+        case BINARY:
+            return readBinary();
+
+        default:
+            return readString();
+        }
+    }
+
+    private String readString() throws IOException {
+        int scan = position;
+
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buffer[scan] == 0) {
+                    String s = new String(buffer, position, scan - position,
+                            charset);
+                    position = scan + 1;
+
+                    return s;
+                }
+            }
+
+            if (eof) {
+                return null;
+            }
+
+            int scanned = scan - position;
+            fill();
+            scan = position + scanned;
+        }
+    }
+
+    private String readBinary() throws IOException {
+        if (!ensure(1)) {
+            return null;
+        }
+
+        int length = buffer[position] & 0xff;
+
+        if (!ensure(1 + length)) {
+            return null;
+        }
+
+        position++;
+
+        char[] hex = new char[length * 2];
+
+        for (int i = 0; i < length; i++) {
+            int b = buffer[position++] & 0xff;
+            hex[2 * i] = HEX[b >>> 4];
+            hex[(2 * i) + 1] = HEX[b & 0xf];
+        }
+
+        return new String(hex);
+    }
+
+    private short int16() {
+        int v = (buffer[position] & 0xff) | ((buffer[position + 1] & 0xff) << 8);
+        position += 2;
+
+        return (short) v;
+    }
+
+    private int int32() {
+        int v = (buffer[position] & 0xff) |
+            ((buffer[position + 1] & 0xff) << 8) |
+            ((buffer[position + 2] & 0xff) << 16) |
+            ((buffer[position + 3] & 0xff) << 24);
+        position += 4;
+
+        return v;
+    }
+
+    private long int64() {
+        long low = int32() & 0xffffffffL;
+        long high = int32() & 0xffffffffL;
+
+        return low | (high << 32);
+    }
+
+    /**
+     * Makes sure the specified number of bytes is buffered.
+     * @return false if the stream ends before
+     */
+    private boolean ensure(int count) throws IOException {
+        while ((limit - position) < count) {
+            if (eof) {
+                return false;
+            }
+
+            fill();
+        }
+
+        return true;
+    }
+
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * The value type of a group code, from the group code value types of the
+     * DXF reference.
+     */
+    private static int typeOf(int code) {
+        if (((code >= 10) && (code <= 59)) || ((code >= 110) && (code <= 149)) ||
+                ((code >= 210) && (code <= 239)) ||
+                ((code >= 460) && (code <= 469)) ||
+                ((code >= 1010) && (code <= 1059))) {
+            return DOUBLE;
+        }
+
+        if (((code >= 60) && (code <= 79)) || ((code >= 170) && (code <= 179)) ||
+                ((code >= 270) && (code <= 289)) ||
+                ((code >= 370) && (code <= 389)) ||
+                ((code >= 400) && (code <= 409)) ||
+                ((code >= 1060) && (code <= 1070))) {
+            return INT16;
+        }
+
+        if (((code >= 90) && (code <= 99)) || ((code >= 420) && (code <= 429)) ||
+                ((code >= 440) && (code <= 459)) || (code == 1071)) {
+            return INT32;
+        }
+
+        if ((code >= 160) && (code <= 169)) {
+            return INT64;
+        }
+
+        if ((code >= 290) && (code <= 299)) {
+            return BOOLEAN;
+        }
+
+        if (((code >= 310) && (code <= 319)) || (code == 1004)) {
+            return BINARY;
+        }
+
+        return STRING;
+    }
+}
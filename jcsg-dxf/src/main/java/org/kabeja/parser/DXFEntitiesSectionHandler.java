@@ -66,9 +66,11 @@ public class DXFEntitiesSectionHandler extends AbstractSectionHandler
                 }
             }
 
-            if (handlers.containsKey(value.getValue())) {
-                //get handler for the new entity
-                handler = (DXFEntityHandler) handlers.get(value.getValue());
+            //get handler for the new entity
+            DXFEntityHandler entityHandler = (DXFEntityHandler) handlers.get(value.getValue());
+
+            if (entityHandler != null) {
+                handler = entityHandler;
                 handler.setDXFDocument(this.doc);
                 handler.startDXFEntity();
                 parseEntity = true;
@@ -0,0 +1,47 @@
+/*
+ Copyright 2005 Simon Mieth
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.kabeja.parser;
+
+import java.io.IOException;
+
+
+/**
+ * Reads the groups of a DXF stream, a group code followed by its value.
+ * The {@link DXFParser} feeds every group to the stream filters and
+ * section handlers.
+ *
+ */
+public interface DXFGroupReader {
+
+    /**
+     * Reads the next group.
+     * @return false at the end of the stream
+     * @throws IOException
+     */
+    public boolean next() throws IOException;
+
+    /**
+     * @return the group code of the current group
+     */
+    public int getGroupCode();
+
+    /**
+     * @return the value of the current group
+     */
+    public DXFValue getValue();
+
+    public void close() throws IOException;
+}
@@ -22,6 +22,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -49,7 +50,6 @@ public class DXFParser implements HandlerManager, Handler, Parser, DXFHandler {
     protected DXFDocument doc;
     protected Hashtable handlers = new Hashtable();
     protected DXFSectionHandler currentHandler;
-    private String line;
     protected List streamFilters = new ArrayList();
     protected DXFHandler filter;
 
@@ -92,7 +92,6 @@ public class DXFParser implements HandlerManager, Handler, Parser, DXFHandler {
      */
     public void parse(InputStream input, String encoding)
         throws ParseException {
-        String currentKey = "";
         key = false;
         linecount = 0;
         parse = false;
@@ -103,45 +102,56 @@ public class DXFParser implements HandlerManager, Handler, Parser, DXFHandler {
         //the StreamFilters
         this.buildFilterChain();
 
-        BufferedReader in = null;
+        DXFGroupReader in = null;
 
         try {
-            if ("".equals(encoding)) {
-                BufferedInputStream buf = new BufferedInputStream(input);
-                buf.mark(9000);
-
-                try {
-                    BufferedReader r = new BufferedReader(new InputStreamReader(
-                                buf));
-                    CodePageParser p = new CodePageParser();
-                    encoding = p.parseEncoding(r);
-                    buf.reset();
-
-                    in = new BufferedReader(new InputStreamReader(buf, encoding));
-                } catch (IOException e1) {
-                    buf.reset();
-                    in = new BufferedReader(new InputStreamReader(buf));
-                }
+            BufferedInputStream buf = new BufferedInputStream(input);
+
+            if (DXFBinaryGroupReader.isBinary(buf)) {
+                in = new DXFBinaryGroupReader(buf,
+                        "".equals(encoding) ? Charset.defaultCharset()
+                                            : toCharset(encoding));
             } else {
-                in = new BufferedReader(new InputStreamReader(input, encoding));
+                Charset charset;
+
+                if ("".equals(encoding)) {
+                    buf.mark(9000);
+
+                    try {
+                        BufferedReader r = new BufferedReader(new InputStreamReader(
+                                    buf));
+                        CodePageParser p = new CodePageParser();
+                        encoding = p.parseEncoding(r);
+                        buf.reset();
+
+                        charset = Charset.forName(encoding);
+                    } catch (IllegalArgumentException e1) {
+                        // no or an unknown code page
+                        charset = Charset.defaultCharset();
+                    } catch (IOException e1) {
+                        buf.reset();
+                        charset = Charset.defaultCharset();
+                    }
+                } else {
+                    charset = toCharset(encoding);
+                }
+
+                if (DXFAsciiGroupReader.supports(charset)) {
+                    in = new DXFAsciiGroupReader(buf, charset);
+                } else {
+                    in = new LineGroupReader(new BufferedReader(
+                                new InputStreamReader(buf, charset)));
+                }
             }
 
             key = true;
             sectionstarts = false;
 
-            while ((line = in.readLine()) != null) {
-                linecount++;
+            while (in.next()) {
+                linecount += 2;
 
-                if (key) {
-                    currentKey = line;
-                    key = false;
-                } else {
-                    int keyCode = Integer.parseInt(currentKey.trim());
-                    //the filter chain
-                    filter.parseGroup(keyCode, new DXFValue(line.trim()));
-                    // parseGroup(currentKey, line);
-                    key = true;
-                }
+                //the filter chain
+                filter.parseGroup(in.getGroupCode(), in.getValue());
             }
 
             in.close();
@@ -159,6 +169,14 @@ public class DXFParser implements HandlerManager, Handler, Parser, DXFHandler {
         }
     }
 
+    private static Charset toCharset(String encoding) throws ParseException {
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.toString());
+        }
+    }
+
     public void parseGroup(int keyCode, DXFValue value)
         throws ParseException {
         //System.out.println(""+keyCode);
@@ -167,8 +185,10 @@ public class DXFParser implements HandlerManager, Handler, Parser, DXFHandler {
             if (sectionstarts) {
                 sectionstarts = false;
 
-                if (handlers.containsKey(value.getValue())) {
-                    currentHandler = (DXFSectionHandler) handlers.get(value.getValue());
+                DXFSectionHandler handler = (DXFSectionHandler) handlers.get(value.getValue());
+
+                if (handler != null) {
+                    currentHandler = handler;
                     parse = true;
                     currentHandler.setDXFDocument(doc);
                     currentHandler.startSection();
@@ -294,4 +314,44 @@ public class DXFParser implements HandlerManager, Handler, Parser, DXFHandler {
     public String getName() {
         return PARSER_NAME;
     }
+
+    /**
+     * Reads the groups line by line, for charsets the
+     * {@link DXFAsciiGroupReader} can not split on the bytes.
+     */
+    private static class LineGroupReader implements DXFGroupReader {
+        private final BufferedReader in;
+        private int groupCode;
+        private DXFValue value;
+
+        LineGroupReader(BufferedReader in) {
+            this.in = in;
+        }
+
+        public boolean next() throws IOException {
+            String currentKey = in.readLine();
+            String line = (currentKey != null) ? in.readLine() : null;
+
+            if (line == null) {
+                return false;
+            }
+
+            groupCode = Integer.parseInt(currentKey.trim());
+            value = new DXFValue(line.trim());
+
+            return true;
+        }
+
+        public int getGroupCode() {
+            return groupCode;
+        }
+
+        public DXFValue getValue() {
+            return value;
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package org.kabeja.parser;
+
+import org.junit.jupiter.api.Test;
+import org.kabeja.dxf.DXFDocument;
+import org.kabeja.dxf.DXFLine;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class DXFGroupReaderTest {
+    private static final String[][] LINE_GROUPS = {
+            { "0", "SECTION" }, { "2", "ENTITIES" },
+            { "0", "LINE" }, { "8", "walls" }, { "62", "3" },
+            { "10", "1.5" }, { "20", "-2.25" }, { "30", "0.0" },
+            { "11", "10.0" }, { "21", "4.0" }, { "31", "0.0" },
+            { "0", "ENDSEC" }, { "0", "EOF" }
+        };
+
+    @Test
+    public void next_ShouldReadTheTrimmedLines() throws Exception {
+        StringBuilder text = new StringBuilder();
+        // long enough to cross the buffer, with every line break style
+        String[] breaks = { "\n", "\r\n", "\r" };
+        for (int i = 0; i < 20000; i++) {
+            text.append("  ").append(i % 1100).append(breaks[i % 3]);
+            text.append(" value ").append(i).append(" é\t").append(breaks[(i / 3) % 3]);
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        DXFAsciiGroupReader reader = new DXFAsciiGroupReader(new ByteArrayInputStream(bytes),
+                StandardCharsets.UTF_8);
+        BufferedReader lines = new BufferedReader(new StringReader(text.toString()));
+        String key;
+        int groups = 0;
+        while ((key = lines.readLine()) != null) {
+            assertTrue(reader.next());
+            assertEquals(Integer.parseInt(key.trim()), reader.getGroupCode());
+            assertEquals(lines.readLine().trim(), reader.getValue().getValue());
+            groups++;
+        }
+        assertFalse(reader.next());
+        assertEquals(20000, groups);
+    }
+
+    @Test
+    public void parse_ShouldReadAsciiDXF() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (String[] group : LINE_GROUPS) {
+            text.append("  ").append(group[0]).append("\r\n").append(group[1]).append("\r\n");
+        }
+
+        assertLine(parse(text.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void parse_ShouldReadBinaryDXF() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(DXFBinaryGroupReader.SENTINEL.getBytes(StandardCharsets.ISO_8859_1));
+        ByteBuffer number = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        for (String[] group : LINE_GROUPS) {
+            int code = Integer.parseInt(group[0]);
+            out.write(code & 0xff);
+            out.write(code >>> 8);
+            number.clear();
+            if (code >= 10 && code <= 39) {
+                number.putDouble(Double.parseDouble(group[1]));
+                out.write(number.array(), 0, 8);
+            } else if (code == 62) {
+                number.putShort(Short.parseShort(group[1]));
+                out.write(number.array(), 0, 2);
+            } else {
+                out.write(group[1].getBytes(StandardCharsets.US_ASCII));
+                out.write(0);
+            }
+        }
+        // padding after the end of file marker is ignored
+        out.write(new byte[16]);
+
+        assertLine(parse(out.toByteArray()));
+    }
+
+    private static DXFDocument parse(byte[] dxf) throws Exception {
+        Parser parser = ParserBuilder.createDefaultParser();
+        parser.parse(new ByteArrayInputStream(dxf), DXFParser.DEFAULT_ENCODING);
+        return parser.getDocument();
+    }
+
+    private static void assertLine(DXFDocument doc) {
+        List lines = doc.getDXFLayer("walls").getDXFEntities("LINE");
+        assertEquals(1, lines.size());
+        DXFLine line = (DXFLine) lines.get(0);
+        assertEquals(1.5, line.getStartPoint().getX(), 0.0);
+        assertEquals(-2.25, line.getStartPoint().getY(), 0.0);
+        assertEquals(10.0, line.getEndPoint().getX(), 0.0);
+        assertEquals(4.0, line.getEndPoint().getY(), 0.0);
+        assertEquals(3, line.getColor());
+    }
+}
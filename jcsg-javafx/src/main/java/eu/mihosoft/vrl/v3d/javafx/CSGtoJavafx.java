@@ -5,7 +5,7 @@ import java.util.List;
 
 import eu.mihosoft.vrl.v3d.Polygon;
 import eu.mihosoft.vrl.v3d.Vector3d;
-import eu.mihosoft.vrl.v3d.Vertex;
+import eu.mihosoft.vrl.v3d.VertexIndex;
 import javafx.scene.shape.TriangleMesh;
 
 public class CSGtoJavafx {
@@ -13,9 +13,17 @@ public class CSGtoJavafx {
 	public static MeshContainer meshFromPolygon(Polygon... poly) {
 		return meshFromPolygon(Arrays.asList(poly));
 	}
-	public static MeshContainer meshFromPolygon(List<Polygon> poly) {
-		TriangleMesh mesh = new TriangleMesh();
 
+	/**
+	 * Creates an indexed triangle mesh from the specified polygons. Polygons are
+	 * fan triangulated, vertices shared by several polygons are welded into one
+	 * mesh point. Every face gets smoothing group 0, so the mesh keeps the flat
+	 * shading of unshared vertices.
+	 *
+	 * @param poly the polygons
+	 * @return the mesh container
+	 */
+	public static MeshContainer meshFromPolygon(List<Polygon> poly) {
 		double minX = Double.POSITIVE_INFINITY;
 		double minY = Double.POSITIVE_INFINITY;
 		double minZ = Double.POSITIVE_INFINITY;
@@ -24,112 +32,62 @@ public class CSGtoJavafx {
 		double maxY = Double.NEGATIVE_INFINITY;
 		double maxZ = Double.NEGATIVE_INFINITY;
 
-		int counter = 0;
+		int triangles = 0;
 		for (Polygon p : poly) {
 			if (p.vertices.size() >= 3) {
+				triangles += p.vertices.size() - 2;
+			}
+		}
+
+		VertexIndex points = new VertexIndex(triangles);
+		// point and texture index per corner, the texture is not covered
+		int[] faces = new int[triangles * 6];
+		int[] polygonPoints = new int[16];
+		int f = 0;
+		for (Polygon p : poly) {
+			int n = p.vertices.size();
+			if (n < 3) {
+				continue;
+			}
+			if (polygonPoints.length < n) {
+				polygonPoints = new int[n];
+			}
+			for (int i = 0; i < n; i++) {
+				Vector3d pos = p.vertices.get(i).pos;
+				minX = Math.min(minX, pos.x);
+				minY = Math.min(minY, pos.y);
+				minZ = Math.min(minZ, pos.z);
+				maxX = Math.max(maxX, pos.x);
+				maxY = Math.max(maxY, pos.y);
+				maxZ = Math.max(maxZ, pos.z);
+				polygonPoints[i] = points.weld(pos);
+			}
+
+			// TODO: improve the triangulation?
+			//
+			// JavaOne requires triangular polygons.
+			// If our polygon has more vertices, create
+			// multiple triangles:
+			for (int i = 0; i < n - 2; i++) {
+				faces[f] = polygonPoints[0];
+				faces[f + 2] = polygonPoints[i + 1];
+				faces[f + 4] = polygonPoints[i + 2];
+				f += 6;
+			}
+		}
+
+		float[] coordinates = new float[points.size() * 3];
+		for (int i = 0; i < points.size(); i++) {
+			coordinates[i * 3] = (float) points.get(i, 0);
+			coordinates[i * 3 + 1] = (float) points.get(i, 1);
+			coordinates[i * 3 + 2] = (float) points.get(i, 2);
+		}
 
-				// TODO: improve the triangulation?
-				//
-				// JavaOne requires triangular polygons.
-				// If our polygon has more vertices, create
-				// multiple triangles:
-				Vertex firstVertex = p.vertices.get(0);
-				for (int i = 0; i < p.vertices.size() - 2; i++) {
-
-					if (firstVertex.pos.x < minX) {
-						minX = firstVertex.pos.x;
-					}
-					if (firstVertex.pos.y < minY) {
-						minY = firstVertex.pos.y;
-					}
-					if (firstVertex.pos.z < minZ) {
-						minZ = firstVertex.pos.z;
-					}
-
-					if (firstVertex.pos.x > maxX) {
-						maxX = firstVertex.pos.x;
-					}
-					if (firstVertex.pos.y > maxY) {
-						maxY = firstVertex.pos.y;
-					}
-					if (firstVertex.pos.z > maxZ) {
-						maxZ = firstVertex.pos.z;
-					}
-
-					mesh.getPoints().addAll((float) firstVertex.pos.x, (float) firstVertex.pos.y,
-							(float) firstVertex.pos.z);
-					
-					mesh.getTexCoords().addAll(0); // texture (not covered)
-					mesh.getTexCoords().addAll(0);
-
-					Vertex secondVertex = p.vertices.get(i + 1);
-
-					if (secondVertex.pos.x < minX) {
-						minX = secondVertex.pos.x;
-					}
-					if (secondVertex.pos.y < minY) {
-						minY = secondVertex.pos.y;
-					}
-					if (secondVertex.pos.z < minZ) {
-						minZ = secondVertex.pos.z;
-					}
-
-					if (secondVertex.pos.x > maxX) {
-						maxX = firstVertex.pos.x;
-					}
-					if (secondVertex.pos.y > maxY) {
-						maxY = firstVertex.pos.y;
-					}
-					if (secondVertex.pos.z > maxZ) {
-						maxZ = firstVertex.pos.z;
-					}
-
-					mesh.getPoints().addAll((float) secondVertex.pos.x, (float) secondVertex.pos.y,
-							(float) secondVertex.pos.z);
-
-					mesh.getTexCoords().addAll(0); // texture (not covered)
-					mesh.getTexCoords().addAll(0);
-
-					Vertex thirdVertex = p.vertices.get(i + 2);
-
-					mesh.getPoints().addAll((float) thirdVertex.pos.x, (float) thirdVertex.pos.y,
-							(float) thirdVertex.pos.z);
-
-					if (thirdVertex.pos.x < minX) {
-						minX = thirdVertex.pos.x;
-					}
-					if (thirdVertex.pos.y < minY) {
-						minY = thirdVertex.pos.y;
-					}
-					if (thirdVertex.pos.z < minZ) {
-						minZ = thirdVertex.pos.z;
-					}
-
-					if (thirdVertex.pos.x > maxX) {
-						maxX = firstVertex.pos.x;
-					}
-					if (thirdVertex.pos.y > maxY) {
-						maxY = firstVertex.pos.y;
-					}
-					if (thirdVertex.pos.z > maxZ) {
-						maxZ = firstVertex.pos.z;
-					}
-
-					mesh.getTexCoords().addAll(0); // texture (not covered)
-					mesh.getTexCoords().addAll(0);
-
-					mesh.getFaces().addAll(counter, // first vertex
-							0, // texture (not covered)
-							counter + 1, // second vertex
-							0, // texture (not covered)
-							counter + 2, // third vertex
-							0 // texture (not covered)
-					);
-					counter += 3;
-				} // end for
-			} // end if #verts >= 3
-
-		} // end for polygon
+		TriangleMesh mesh = new TriangleMesh();
+		mesh.getPoints().setAll(coordinates);
+		mesh.getTexCoords().setAll(0, 0);
+		mesh.getFaces().setAll(faces);
+		mesh.getFaceSmoothingGroups().setAll(new int[triangles]);
 
 		return new MeshContainer(new Vector3d(minX, minY, minZ), new Vector3d(maxX, maxY, maxZ), mesh);
 	}
@@ -7,6 +7,7 @@ import java.util.List;
 import eu.mihosoft.vrl.v3d.CSG;
 import eu.mihosoft.vrl.v3d.Extrude;
 import eu.mihosoft.vrl.v3d.ISlice;
+import eu.mihosoft.vrl.v3d.MeshSlice;
 import eu.mihosoft.vrl.v3d.Polygon;
 import eu.mihosoft.vrl.v3d.Transform;
 import eu.mihosoft.vrl.v3d.Vector3d;
@@ -500,6 +501,25 @@ public class Slice {
 		return slice;
 	}
 
+	/**
+	 * Slices a CSG into a stack of layers in one pass, see
+	 * {@link MeshSlice#sliceStack(CSG, Transform, double)}. Like
+	 * {@link #slice(CSG, Transform, double)} every polygon is counter
+	 * clockwise.
+	 *
+	 * @param incoming    the CSG to slice
+	 * @param basePlane   the frame of the base plane
+	 * @param layerHeight the height of a layer
+	 * @return the polygons of every layer, from the lowest up
+	 */
+	public static List<List<Polygon>> sliceStack(CSG incoming, Transform basePlane, double layerHeight) {
+		List<List<Polygon>> layers = new MeshSlice().sliceStack(incoming, basePlane, layerHeight);
+		for (List<Polygon> layer : layers) {
+			sanatize(layer);
+		}
+		return layers;
+	}
+
 	public static List<Polygon> slice(CSG incoming) {
 		return slice(incoming, new Transform(),0);
 	}
@@ -510,6 +530,13 @@ public class Slice {
 		return sliceEngine;
 	}
 
+	/**
+	 * Sets the engine used by {@link #slice(CSG, Transform, double)}. The
+	 * default engine renders the section with JavaFX; set a
+	 * {@link eu.mihosoft.vrl.v3d.MeshSlice} to slice without a display.
+	 *
+	 * @param sliceEngine the engine
+	 */
 	public static void setSliceEngine(ISlice sliceEngine) {
 		Slice.sliceEngine = sliceEngine;
 	}
@@ -0,0 +1,26 @@
+package eu.mihosoft.vrl.v3d.javafx;
+
+import eu.mihosoft.vrl.v3d.CSG;
+import eu.mihosoft.vrl.v3d.Cube;
+import eu.mihosoft.vrl.v3d.Vector3d;
+import javafx.scene.shape.TriangleMesh;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CSGtoJavafxTest {
+
+	@Test
+	public void meshFromPolygon_ShouldWeldSharedVertices() {
+		CSG cube = new Cube(2, 4, 6).toCSG().move(1, 2, 3);
+
+		MeshContainer container = CSGtoJavafx.meshFromPolygon(cube.getPolygons());
+		TriangleMesh mesh = (TriangleMesh) container.getMeshes().get(0);
+
+		assertEquals(8 * 3, mesh.getPoints().size());
+		assertEquals(12 * 6, mesh.getFaces().size());
+		assertEquals(12, mesh.getFaceSmoothingGroups().size());
+		assertEquals(new Vector3d(0, 0, 0), container.getBounds().getMin());
+		assertEquals(new Vector3d(2, 4, 6), container.getBounds().getMax());
+	}
+}
@@ -2,6 +2,12 @@ package eu.mihosoft.vrl.v3d.svg;
 
 import eu.mihosoft.vrl.v3d.CSG;
 
+/**
+ * Notified of every shape extruded by {@link SVGLoad}. The shapes of a layer
+ * may be extruded on other threads, see
+ * {@link SVGLoad#setExtrusionExecutor(java.util.concurrent.Executor)}; the
+ * listener is never called concurrently by one loader.
+ */
 public interface ISVGLoadProgress {
 	public void onShape(CSG newShape);
 }
@@ -15,6 +15,9 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import javax.vecmath.Matrix4d;
 
@@ -57,6 +60,8 @@ public class SVGLoad {
 //
 //	private List<Polygon> polygons = null;
 	private ISVGLoadProgress progress = null;
+	private final Object progressLock = new Object();
+	private Executor extrusionExecutor = null;
 	private double thickness;
 	private boolean negativeThickness = false;
 	private double height = 0;
@@ -150,7 +155,7 @@ public class SVGLoad {
 		 * @return A string that represents the MetaPost code for a path element.
 		 */
 		public String toCode() {
-			String sb = "";
+			StringBuilder sb = new StringBuilder();
 			SVGOMPathElement pathElement = getPathElement();
 			SVGPathSegList pathList = pathElement.getNormalizedPathSegList();
 			// String offset = pathElement.getOwnerSVGElement();
@@ -164,8 +169,7 @@ public class SVGLoad {
 
 			for (int i = 0; i < pathObjects; i++) {
 				SVGItem item = (SVGItem) pathList.getItem(i);
-				String itemLine = String.format("%s%n", item.getValueAsString());
-				sb += itemLine;
+				sb.append(item.getValueAsString()).append(System.lineSeparator());
 			}
 
 			return sb.toString();
@@ -374,19 +378,16 @@ public class SVGLoad {
 		//// com.neuronrobotics.sdk.common.Log.error("\tApply " + transformValue + "
 		//// root " + startingFrame.getX() + " " + startingFrame.getY());
 		if (transformValue.contains("translate")) {
-			String[] transformValues = transformValue.replaceAll("translate", "").replaceAll("\\(", "")
-					.replaceAll("\\)", "").split("\\,");
+			String[] transformValues = transformArguments(transformValue, "translate");
 			newFrame.apply(new Transform().translate(toPx(transformValues[0]), toPx(transformValues[1]), 0));
 
 		} else if (transformValue.contains("rotate")) {
-			String[] rotvals = transformValue.replaceAll("rotate", "").replaceAll("\\(", "").replaceAll("\\)", "")
-					.split("\\,");
+			String[] rotvals = transformArguments(transformValue, "rotate");
 			newFrame = startingFrame.inverse().apply(new Transform().rotZ(-Double.parseDouble(rotvals[0])))
 					.apply(startingFrame);
 
 		} else if (transformValue.contains("scale")) {
-			String[] transformValues = transformValue.replaceAll("scale", "").replaceAll("\\(", "")
-					.replaceAll("\\)", "").split("\\,");
+			String[] transformValues = transformArguments(transformValue, "scale");
 			// //com.neuronrobotics.sdk.common.Log.error(id.getNodeValue() + " " +
 			// transformValues);
 			double scalex = toPx(transformValues[0]);
@@ -394,8 +395,7 @@ public class SVGLoad {
 			newFrame.scale(scalex, scaley, 1);
 
 		} else if (transformValue.contains("matrix")) {
-			String[] transformValues = transformValue.replaceAll("matrix", "").replaceAll("\\(", "")
-					.replaceAll("\\)", "").split("\\,");
+			String[] transformValues = transformArguments(transformValue, "matrix");
 			// //com.neuronrobotics.sdk.common.Log.error("Matrix found " +new
 			// ArrayList<>(Arrays.asList(transformValues)));
 			double a = toPx(transformValues[0]);
@@ -411,6 +411,39 @@ public class SVGLoad {
 		return newFrame;
 	}
 
+	/**
+	 * Gets the arguments of a function of a transform attribute, e.g. "10" and
+	 * "20" of "translate(10,20)". Arguments are separated by commas or white
+	 * space.
+	 *
+	 * @param transformValue the attribute value
+	 * @param function       the function name
+	 * @return the arguments
+	 */
+	static String[] transformArguments(String transformValue, String function) {
+		int start = transformValue.indexOf(function) + function.length();
+		int open = transformValue.indexOf('(', start);
+		int close = transformValue.indexOf(')', open + 1);
+		String arguments = transformValue.substring(open < 0 ? start : open + 1,
+				close < 0 ? transformValue.length() : close);
+		ArrayList<String> values = new ArrayList<>(6);
+		int i = 0;
+		int length = arguments.length();
+		while (i < length) {
+			char ch = arguments.charAt(i);
+			if (ch == ',' || Character.isWhitespace(ch)) {
+				i++;
+				continue;
+			}
+			int end = i;
+			while (end < length && arguments.charAt(end) != ',' && !Character.isWhitespace(arguments.charAt(end)))
+				end++;
+			values.add(arguments.substring(i, end));
+			i = end;
+		}
+		return values.toArray(new String[0]);
+	}
+
 	// SVGOMGElement
 	private void loadPath(Node pathNode, double resolution, Transform startingFrame, String encapsulatingLayer) {
 		Transform newFrame;
@@ -481,7 +514,7 @@ public class SVGLoad {
 					String code = mpp.toCode();
 					//// com.neuronrobotics.sdk.common.Log.error("\tPath
 					//// "+pathNode.getAttributes().getNamedItem("id").getNodeValue()+" "+newFrame);
-					loadComposite(code, resolution, newFrame, encapsulatingLayer, c);
+					loadComposite(code, resolution, pointFrame(newFrame), encapsulatingLayer, c);
 				} else if (SVGOMPolylineElement.class.isInstance(pathNode)) {
 					Color c = null;
 					//// com.neuronrobotics.sdk.common.Log.error("Layer "+encapsulatingLayer);
@@ -524,7 +557,7 @@ public class SVGLoad {
 						}
 					}
 
-					String sb = null;
+					StringBuilder sb = new StringBuilder();
 					SVGOMPolylineElement pathElement = (SVGOMPolylineElement) pathNode;
 					SVGPointList pathList = pathElement.getPoints();
 					// String offset = pathElement.getOwnerSVGElement();
@@ -533,14 +566,14 @@ public class SVGLoad {
 
 					for (int i = 0; i < pathObjects; i++) {
 						SVGItem item = (SVGItem) pathList.getItem(i);
-						String itemLine = String.format("%s%n", item.getValueAsString());
-						if (sb == null) {
-							sb = "M " + itemLine;
+						String itemLine = item.getValueAsString() + System.lineSeparator();
+						if (i == 0) {
+							sb.append("M ").append(itemLine);
 						}
-						sb += "L " + itemLine;
+						sb.append("L ").append(itemLine);
 					}
-					sb += "z\n";
-					loadComposite(sb, resolution, newFrame, encapsulatingLayer, c);
+					sb.append("z\n");
+					loadComposite(sb.toString(), resolution, pointFrame(newFrame), encapsulatingLayer, c);
 				} else if (SVGOMImageElement.class.isInstance(pathNode)) {
 					SVGImageElement image = (SVGOMImageElement) pathNode;
 					//// com.neuronrobotics.sdk.common.Log.error("Loading Image element..");
@@ -574,41 +607,49 @@ public class SVGLoad {
 
 	}
 
-	private void loadComposite(String code, double resolution, Transform startingFrame, String encapsulatingLayer,
+	/**
+	 * Loads every subpath of a path, each subpath starts with an M command.
+	 *
+	 * @param pointFrame the transform from path to model coordinates, see
+	 *                   {@link #pointFrame(Transform)}
+	 */
+	private void loadComposite(String code, double resolution, Transform pointFrame, String encapsulatingLayer,
 			Color c) {
-		// Count the occourences of M
-		int count = code.length() - code.replace("M", "").length();
-		if (count < 2) {
+		int first = code.indexOf('M');
+		if (first < 0 || code.indexOf('M', first + 1) < 0) {
 			// println "Single path found"
-
-			// setHolePolarity(true);
-//			try {
-			loadSingle(code, resolution, startingFrame, encapsulatingLayer, c);
-//			} catch (Exception ex) {
-//				//com.neuronrobotics.sdk.common.Log.error("Polygon failed to load!");
-//				ex.printStackTrace();
-//				// BowlerStudio.printStackTrace(ex);
-//			}
-		} else {
-
-			// setHolePolarity(false);
-			String[] pathParts = code.split("M");
-			// println "Complex path found "+ pathParts.length ;
-			for (int i = 0; i < pathParts.length; i++) {
-				String sectionedPart = "M" + pathParts[i];
-				// reapply the split char
-				if (sectionedPart.length() > 1) {
-
-					// println "Seperated complex: "
-					loadSingle(sectionedPart, resolution, startingFrame, encapsulatingLayer, c);
-				}
+			loadSingle(code, resolution, pointFrame, encapsulatingLayer, c);
+			return;
+		}
+		// println "Complex path found"
+		int start = 0;
+		while (true) {
+			int end = code.indexOf('M', start);
+			int partEnd = end < 0 ? code.length() : end;
+			// reapply the split char
+			if (partEnd > start) {
+				loadSingle("M" + code.substring(start, partEnd), resolution, pointFrame, encapsulatingLayer, c);
 			}
+			if (end < 0)
+				break;
+			start = end + 1;
 		}
 		// //com.neuronrobotics.sdk.common.Log.error("SVG has this many elements loaded:
 		// "+sections.size());
 		// BowlerStudioController.setCsg(sections,null);
 	}
 
+	/**
+	 * Combines the frame of a node with the page scale, the page flip and the
+	 * rotations into the model orientation, so a point is transformed once.
+	 *
+	 * @param frame the frame of the node
+	 * @return the transform from path to model coordinates
+	 */
+	private Transform pointFrame(Transform frame) {
+		return new Transform().rotY(180).rotZ(-180).translate(0, -height, 0).scale(1.0 / getScale()).apply(frame);
+	}
+
 	public static boolean isCCW(Polygon polygon) {
 		double runningTotal = 0;
 		List<Edge> edges = Edge.fromPolygon(polygon);
@@ -621,7 +662,7 @@ public class SVGLoad {
 		return runningTotal < 0;
 	}
 
-	private void loadSingle(String code, double resolution, Transform startingFrame, String encapsulatingLayer,
+	private void loadSingle(String code, double resolution, Transform pointFrame, String encapsulatingLayer,
 			Color c) {
 		if(encapsulatingLayer==null)
 			throw new RuntimeException("Layer Name can not be null");
@@ -631,11 +672,7 @@ public class SVGLoad {
 
 		ArrayList<Vector3d> p = path.evaluate();
 		for (Vector3d point : p) {
-			point.transform(startingFrame);
-			point.transform(new Transform().scale((1.0 / getScale())));
-			point.transform(new Transform().translate(0, -height, 0));
-			point.transform(new Transform().rotZ(-180));
-			point.transform(new Transform().rotY(180));
+			pointFrame.transform(point);
 		}
 
 		// //com.neuronrobotics.sdk.common.Log.error(" Path " + code);
@@ -689,6 +726,9 @@ public class SVGLoad {
 
 		toPolygons(0.001);
 
+		Vector3d dir = new Vector3d(0, 0, thickness);
+		boolean toZMax = negativeThickness;
+		ISVGLoadProgress listener = progress != null ? progress : progressDefault;
 		for (String key : getPolygonByLayers().keySet()) {
 			if (targetLayer != null)
 				if (!targetLayer.contentEquals(key))
@@ -698,19 +738,34 @@ public class SVGLoad {
 			}
 			ArrayList<CSG> parts = csgByLayers.get(key);
 			parts.clear();
-			for (Polygon p : getPolygonByLayers().get(key)) {
+			List<Polygon> polygons = getPolygonByLayers().get(key);
+			Executor executor = extrusionExecutor;
+			if (executor == null || polygons.size() < 2) {
+				for (Polygon p : polygons) {
+					CSG newbit = extrudePolygon(p, dir, toZMax, listener);
+					if (newbit != null) {
+						parts.add(newbit);
+					}
+				}
+				continue;
+			}
+			List<CompletableFuture<CSG>> pending = new ArrayList<>(polygons.size());
+			for (Polygon p : polygons) {
+				pending.add(CompletableFuture.supplyAsync(() -> extrudePolygon(p, dir, toZMax, listener), executor));
+			}
+			// keep the order of the paths, whatever order they finish in
+			for (CompletableFuture<CSG> part : pending) {
 				CSG newbit;
 				try {
-					newbit = Extrude.getExtrusionEngine().extrude(new Vector3d(0, 0, thickness), p);
-					if (negativeThickness) {
-						newbit = newbit.toZMax();
-					}
-					if (colors.get(p) != null) {
-						newbit.setColor(colors.get(p));
+					newbit = part.join();
+				} catch (CompletionException ex) {
+					if (ex.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) ex.getCause();
 					}
+					throw ex;
+				}
+				if (newbit != null) {
 					parts.add(newbit);
-				} catch (Exception ex) {
-					//ex.printStackTrace();
 				}
 			}
 		}
@@ -718,6 +773,57 @@ public class SVGLoad {
 		return csgByLayers;
 	}
 
+	/**
+	 * Extrudes one path, reporting the new shape to the progress listener.
+	 *
+	 * @return the shape, or null if the path can not be extruded
+	 */
+	private CSG extrudePolygon(Polygon p, Vector3d dir, boolean toZMax, ISVGLoadProgress listener) {
+		CSG newbit;
+		try {
+			newbit = Extrude.getExtrusionEngine().extrude(dir, p);
+			if (toZMax) {
+				newbit = newbit.toZMax();
+			}
+			Color color = colors.get(p);
+			if (color != null) {
+				newbit.setColor(color);
+			}
+		} catch (Exception ex) {
+			//ex.printStackTrace();
+			return null;
+		}
+		// listeners are called from the extrusion threads, but one at a time
+		synchronized (progressLock) {
+			listener.onShape(newbit);
+		}
+		return newbit;
+	}
+
+	/**
+	 * Gets the executor the paths of a layer are extruded on.
+	 *
+	 * @return the executor, or null if paths are extruded on the calling thread
+	 */
+	public Executor getExtrusionExecutor() {
+		return extrusionExecutor;
+	}
+
+	/**
+	 * Sets the executor the paths of a layer are extruded on. The paths are
+	 * independent, so they are extruded concurrently; the parts of a layer keep
+	 * the order of the paths. The progress listener is called from the executor
+	 * threads, one shape at a time, and the extrusion engine of
+	 * {@link Extrude#getExtrusionEngine()} must be thread safe. Defaults to null,
+	 * extruding on the calling thread.
+	 *
+	 * @param extrusionExecutor the executor, or null to extrude the paths one
+	 *                          after the other on the calling thread
+	 */
+	public void setExtrusionExecutor(Executor extrusionExecutor) {
+		this.extrusionExecutor = extrusionExecutor;
+	}
+
 	public ArrayList<CSG> extrude(double t, double resolution) throws IOException {
 
 		HashMap<String, ArrayList<CSG>> layers = extrudeLayers(t, resolution, null);
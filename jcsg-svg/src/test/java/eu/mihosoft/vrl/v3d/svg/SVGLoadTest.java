@@ -0,0 +1,87 @@
+package eu.mihosoft.vrl.v3d.svg;
+
+import eu.mihosoft.vrl.v3d.CSG;
+import eu.mihosoft.vrl.v3d.Color;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SVGLoadTest {
+
+    private static final String[] FILLS = { "#ff0000", "#00ff00", "#0000ff", "#ffff00", "#00ffff", "#ff00ff",
+            "#808080", "#000000" };
+
+    private static String squares() {
+        StringBuilder svg = new StringBuilder(
+                "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"200mm\" height=\"20mm\" viewBox=\"0 0 200 20\">");
+        for (int i = 0; i < FILLS.length; i++) {
+            int x = i * 20;
+            svg.append("<path style=\"fill:").append(FILLS[i]).append(";stroke:none\" d=\"M ").append(x)
+                    .append(",0 L ").append(x + 10).append(",0 L ").append(x + 10).append(",10 L ").append(x)
+                    .append(",10 Z\"/>");
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    @Test
+    public void getExtrusionExecutor_ShouldDefaultToCallingThread() throws Exception {
+        assertNull(new SVGLoad(squares()).getExtrusionExecutor());
+    }
+
+    @Test
+    public void extrudeLayers_WithExecutorShouldMatchSequentialParts() throws Exception {
+        HashMap<String, ArrayList<CSG>> expected = new SVGLoad(squares()).extrudeLayers(5);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SVGLoad load = new SVGLoad(squares());
+            Map<CSG, Integer> shapes = Collections.synchronizedMap(new IdentityHashMap<>());
+            load.setProgress(shape -> shapes.merge(shape, 1, Integer::sum));
+            load.setExtrusionExecutor(executor);
+            HashMap<String, ArrayList<CSG>> result = load.extrudeLayers(5);
+
+            assertEquals(expected.keySet(), result.keySet());
+            int count = 0;
+            for (String layer : expected.keySet()) {
+                List<CSG> e = expected.get(layer);
+                List<CSG> a = result.get(layer);
+                assertEquals(e.size(), a.size());
+                for (int i = 0; i < e.size(); i++) {
+                    assertEquals(e.get(i).getMinX(), a.get(i).getMinX(), 1e-9);
+                    assertEquals(e.get(i).getColor(), a.get(i).getColor());
+                    assertEquals(Integer.valueOf(1), shapes.get(a.get(i)));
+                }
+                count += a.size();
+            }
+            assertEquals(FILLS.length, count);
+            assertEquals(count, shapes.size());
+            for (int i = 0; i < FILLS.length; i++) {
+                assertTrue(containsColor(result, Color.web(FILLS[i])), FILLS[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean containsColor(HashMap<String, ArrayList<CSG>> layers, Color color) {
+        for (ArrayList<CSG> parts : layers.values()) {
+            for (CSG part : parts) {
+                if (color.equals(part.getColor())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}